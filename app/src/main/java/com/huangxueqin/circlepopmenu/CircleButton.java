@@ -1,47 +1,36 @@
 package com.huangxueqin.circlepopmenu;
 
 import android.content.Context;
-import android.content.res.Resources;
 import android.content.res.TypedArray;
-import android.graphics.Bitmap;
-import android.graphics.BitmapShader;
-import android.graphics.BlurMaskFilter;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
-import android.graphics.Paint;
-import android.graphics.Path;
-import android.graphics.RectF;
-import android.graphics.Shader;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
-import android.graphics.drawable.ShapeDrawable;
-import android.os.Build;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
 
-import java.util.Map;
+import com.huangxueqin.circlepopmenu.geometry.MenuGeometry;
 
 /**
  * Created by huangxueqin on 16/9/10.
  */
 public class CircleButton extends View {
-    private static final int SHADOW_WIDTH_PX = 5;
+    private static final int SHADOW_WIDTH_PX = CircleRenderer.SHADOW_WIDTH_PX;
 
     private int mRadius = -1;
-    private IconType mIconType;
-
-    private Drawable mIconDrawable;
-    private Drawable mCircleDrawable;
-    private Paint mCirclePaint;
-    private Paint mShadowPaint;
-    private Paint mIconPaint;
-
-    private Path mCircleBackgroundPath = new Path();
-
-    private RectF mTempRect = new RectF();
+    private CircleRenderer mRenderer;
+    // set by the owning menu while its metrics are collected
+    private MenuMetrics mMetrics;
+    // an icon load waiting for the first measure pass, which tells the size to decode at
+    private IconLoader.Source mPendingIconSource;
+
+    private final IconLoader.Target mIconTarget = new IconLoader.Target() {
+        @Override
+        public void onIconLoaded(Drawable icon) {
+            mRenderer.setIconDrawable(icon);
+            invalidate();
+        }
+    };
 
 
     public CircleButton(Context context) {
@@ -55,135 +44,163 @@ public class CircleButton extends View {
     public CircleButton(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
         initAttributes(context, attrs);
-        initPaints();
 
         setBackgroundColor(Color.TRANSPARENT);
         setClickable(true);
     }
 
+    /**
+     * Button of a menu, styled by the menu instead of attributes.
+     */
+    CircleButton(Context context, MenuStyle style, Drawable circleDrawable) {
+        super(context);
+        mRenderer = new CircleRenderer(style.getDensity(), circleDrawable);
+        setClickable(true);
+    }
+
     private void initAttributes(Context context, AttributeSet attrs) {
         TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.CircleButton);
-        mCircleDrawable = ta.getDrawable(R.styleable.CircleButton_background);
-        mIconDrawable = ta.getDrawable(R.styleable.CircleButton_icon);
-        mIconType = IconType.fromId(ta.getInt(R.styleable.CircleButton_iconType, mIconDrawable == null ? -1 : 1));
+        Drawable circleDrawable = ta.getDrawable(R.styleable.CircleButton_background);
+        Drawable iconDrawable = ta.getDrawable(R.styleable.CircleButton_icon);
+        IconType iconType = IconType.fromId(ta.getInt(R.styleable.CircleButton_iconType, iconDrawable == null ? -1 : 1));
         ta.recycle();
-        if (mCircleDrawable == null) {
-            mCircleDrawable = getDefaultCircleDrawable(context);
+        if (circleDrawable == null) {
+            circleDrawable = CircleRenderer.getDefaultCircleDrawable(context);
         }
+        mRenderer = new CircleRenderer(getResources(), circleDrawable);
+        mRenderer.setIconDrawable(iconDrawable);
+        mRenderer.setIconType(iconType);
     }
 
-    private Drawable getDefaultCircleDrawable(Context context) {
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
-            return getResources().getDrawable(R.drawable.default_circle_button_bg);
-        } else {
-            return getResources().getDrawable(R.drawable.default_circle_button_bg, context.getTheme());
-        }
+    void setCircleDrawable(Drawable circleDrawable) {
+        mRenderer.setCircleDrawable(circleDrawable);
+        mRenderer.setState(getDrawableState());
+        invalidate();
     }
 
-    private void initPaints() {
-        mCirclePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mCirclePaint.setStyle(Paint.Style.FILL);
-
-        mShadowPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mShadowPaint.setColor(Color.BLACK);
-        mShadowPaint.setAlpha(255/2);
-        mShadowPaint.setMaskFilter(new BlurMaskFilter(SHADOW_WIDTH_PX, BlurMaskFilter.Blur.NORMAL));
-        setLayerType(LAYER_TYPE_SOFTWARE, mShadowPaint);
+    public void setIconDrawable(Drawable iconDrawable) {
+        cancelIconLoad();
+        mRenderer.setIconDrawable(iconDrawable);
+        invalidate();
+    }
 
-        mIconPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    public void setIconResource(int resId) {
+        Drawable d = DrawableRegistry.getDrawable(getContext(), resId);
+        if (d != null) {
+            setIconDrawable(d);
+        }
     }
 
-    public void setIconDrawable(Drawable iconDrawable) {
-        if (iconDrawable == null) {
-            mIconType = IconType.NONE;
-            invalidate();
+    /**
+     * Shows the placeholder and replaces it with the icon once it is decoded in the background,
+     * at the size of the button. A button not measured yet starts the load once it is.
+     * A pending load is cancelled by a new icon or when the button is detached.
+     */
+    public void loadIcon(IconLoader.Source source, Drawable placeholder) {
+        if (mRadius > 0) {
+            loadIcon(source, placeholder, mRadius);
             return;
         }
+        setIconDrawable(placeholder);
+        mPendingIconSource = source;
+    }
+
+    void loadIcon(IconLoader.Source source, Drawable placeholder, int targetSize) {
+        setIconDrawable(placeholder);
+        IconLoader.load(getContext(), source, targetSize, mIconTarget);
+    }
+
+    public void setIconResourceAsync(int resId) {
+        loadIcon(IconLoader.fromResource(resId), null);
+    }
+
+    private void cancelIconLoad() {
+        mPendingIconSource = null;
+        IconLoader.cancel(mIconTarget);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        cancelIconLoad();
+    }
 
-        mIconType = IconType.IMAGE;
-        if (iconDrawable.equals(mIconDrawable)) {
-            mIconDrawable = iconDrawable;
+    public void setIconType(IconType type) {
+        if (mRenderer.getIconType() != type) {
+            mRenderer.setIconType(type);
             invalidate();
         }
     }
 
-    public void setIconResource(int resId) {
-        Resources res = getResources();
-        Drawable d = null;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            d = res.getDrawable(resId, getContext().getTheme());
-        } else {
-            d = res.getDrawable(resId);
-        }
-        if (d != null) {
-            setIconDrawable(d);
-        }
+    /**
+     * Draws the icon with the renderer, switching the icon type to {@link IconType#CUSTOM}.
+     */
+    public void setIconRenderer(IconRenderer renderer) {
+        cancelIconLoad();
+        mRenderer.setIconRenderer(renderer);
+        invalidate();
     }
 
-    public void setIconType(IconType type) {
-        if (mIconType != type) {
-            mIconType = type;
+    public IconRenderer getIconRenderer() {
+        return mRenderer.getIconRenderer();
+    }
+
+    /**
+     * Moves the icon between its two states, from 0 to 1. A plus turns into a close cross,
+     * an image is turned by 45 degrees and custom icons get the progress passed.
+     */
+    public void setIconProgress(float progress) {
+        if (mRenderer.setIconProgress(progress)) {
             invalidate();
         }
     }
 
+    public float getIconProgress() {
+        return mRenderer.getIconProgress();
+    }
+
+    void setMetrics(MenuMetrics metrics) {
+        mMetrics = metrics;
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        final int widthMode = MeasureSpec.getMode(widthMeasureSpec);
-        final int widthSize = MeasureSpec.getSize(widthMeasureSpec);
-        final int heightMode = MeasureSpec.getMode(heightMeasureSpec);
-        final int heightSize = MeasureSpec.getSize(heightMeasureSpec);
-
-        int width = Math.max(0, widthSize);
-        int height = Math.max(0, heightSize);
-
-        if (widthMode == MeasureSpec.EXACTLY) {
-            if (heightMode == MeasureSpec.AT_MOST) {
-                height = Math.min(width, height);
-            } else if (heightMode == MeasureSpec.UNSPECIFIED) {
-                height = width;
-            }
-        } else if (width == MeasureSpec.EXACTLY) {
-            if (widthMode == MeasureSpec.AT_MOST) {
-                width = Math.min(width, height);
-            } else {
-                width = height;
-            }
-        } else if (widthMode == MeasureSpec.AT_MOST && height == MeasureSpec.AT_MOST) {
-            width = Math.min(width, height);
-            height = Math.min(width, height);
-        } else if (widthMode == MeasureSpec.UNSPECIFIED && heightMode == MeasureSpec.UNSPECIFIED) {
-            width = Math.max(width, height);
-            height = Math.max(width, height);
-        } else {
-            if (widthMode == MeasureSpec.UNSPECIFIED) {
-                width = height;
-            } else {
-                height = width;
-            }
+        final MenuMetrics metrics = mMetrics;
+        if (metrics == null) {
+            measureCircle(widthMeasureSpec, heightMeasureSpec);
+            return;
         }
+        final long start = System.nanoTime();
+        measureCircle(widthMeasureSpec, heightMeasureSpec);
+        metrics.record(MenuMetrics.VIEW_BUTTON, MenuMetrics.PASS_MEASURE, start);
+    }
+
+    private void measureCircle(int widthMeasureSpec, int heightMeasureSpec) {
+        final long size = MenuGeometry.measureCircle(widthMeasureSpec, heightMeasureSpec);
+        final int width = MenuGeometry.unpackWidth(size);
+        final int height = MenuGeometry.unpackHeight(size);
 
         setMeasuredDimension(width, height);
-        final int padding = Math.max(SHADOW_WIDTH_PX*2, getPaddingLeft() + getPaddingRight());
-        mRadius = Math.min(width-padding, height-padding) / 2;
+        mRadius = MenuGeometry.circleRadius(width, height, getPaddingLeft() + getPaddingRight(), SHADOW_WIDTH_PX);
+        mRenderer.setSize(width, height, mRadius);
+        if (mPendingIconSource != null && mRadius > 0) {
+            IconLoader.Source source = mPendingIconSource;
+            mPendingIconSource = null;
+            IconLoader.load(getContext(), source, mRadius, mIconTarget);
+        }
     }
 
     @Override
-    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        super.onSizeChanged(w, h, oldw, oldh);
-        mCircleBackgroundPath.reset();
-        mCircleBackgroundPath.addCircle(w/2, h/2, mRadius, Path.Direction.CW);
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        final MenuMetrics metrics = mMetrics;
+        if (metrics != null) {
+            // nothing to lay out, only counted
+            metrics.record(MenuMetrics.VIEW_BUTTON, MenuMetrics.PASS_LAYOUT, System.nanoTime());
+        }
     }
 
     private void refreshCircleDrawableState() {
-        final int[] state = getDrawableState();
-        boolean changed = false;
-        Drawable d = mCircleDrawable;
-        if (d != null && d.isStateful()) {
-            changed |= d.setState(state);
-        }
-
-        if (changed) {
+        if (mRenderer.setState(getDrawableState())) {
             invalidate();
         }
     }
@@ -202,52 +219,18 @@ public class CircleButton extends View {
 
     @Override
     protected void onDraw(Canvas canvas) {
-        // draw shadow
-        final int cx = getWidth() / 2;
-        final int cy = getHeight() / 2;
-        canvas.drawCircle(cx, cy, mRadius, mShadowPaint);
-
-        canvas.save();
-        // draw circle background
-        canvas.clipPath(mCircleBackgroundPath);
-        Drawable d = mCircleDrawable.getCurrent();
-        d.setBounds(0, 0, getMeasuredWidth(), getMeasuredHeight());
-        d.draw(canvas);
-
-        if(mIconType == IconType.PLUS) {
-            // draw plus
-            mIconPaint.setColor(Color.WHITE);
-            mIconPaint.setStyle(Paint.Style.FILL);
-            int t = (int) (1.0 / 2 * mRadius + 0.5);
-            int m = (int) (getContext().getResources().getDisplayMetrics().density * 1);
-            mTempRect.set(cx - t, cy - m, cx + t, cy + m);
-            canvas.drawRoundRect(mTempRect, m, m, mIconPaint);
-            mTempRect.set(cx - m, cy - t, cx + m, cy + t);
-            canvas.drawRoundRect(mTempRect, m, m, mIconPaint);
-        }
-        else if(mIconType == IconType.IMAGE && mIconDrawable != null) {
-            canvas.save();
-            int dh = mIconDrawable.getIntrinsicHeight();
-            int dw = mIconDrawable.getIntrinsicWidth();
-            mIconDrawable.setBounds(0, 0, dw, dh);
-            int translateX = mRadius - dw/2;
-            int translateY = mRadius - dh/2;
-            canvas.translate(translateX, translateY);
-            if(dh > 1.0*mRadius || dw > 1.0*mRadius) {
-                float scale = Math.min(1.0f*mRadius/dh, 1.0f*mRadius/dw);
-                canvas.scale(scale, scale, cx-translateX, cy-translateY);
-            }
-            mIconDrawable.draw(canvas);
-            canvas.restore();
-        } else if (mIconType == IconType.CUSTOM) {
-
+        final MenuMetrics metrics = mMetrics;
+        if (metrics == null) {
+            mRenderer.draw(canvas);
+            return;
         }
-
-        canvas.restore();
+        final long start = System.nanoTime();
+        mRenderer.draw(canvas);
+        metrics.record(MenuMetrics.VIEW_BUTTON, MenuMetrics.PASS_DRAW, start);
     }
 
     public enum IconType {
-        NONE(-1), PLUS(0), IMAGE(1), CUSTOM(3);
+        NONE(-1), PLUS(0), IMAGE(1), CUSTOM(2);
 
         int id;
         IconType(int id) {
@@ -1,15 +1,33 @@
 package com.huangxueqin.circlepopmenu;
 
-import android.animation.AnimatorSet;
-import android.animation.ObjectAnimator;
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.graphics.drawable.Drawable;
+import android.database.DataSetObservable;
+import android.database.DataSetObserver;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.v4.util.LongSparseArray;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
 import android.view.animation.DecelerateInterpolator;
+import android.view.animation.LinearInterpolator;
+
+import com.huangxueqin.circlepopmenu.geometry.HitRegions;
+import com.huangxueqin.circlepopmenu.geometry.MenuGeometry;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -18,33 +36,117 @@ import java.util.List;
  * Created by huangxueqin on 16/9/10.
  */
 public class CirclePopMenu extends ViewGroup {
-    private static final int DEFAULT_MAIN_BUTTON_SIZE = 50;
-    private static final int DEFAULT_MENU_BUTTON_SIZE = 40;
-    private static final int DEFAULT_MENU_BUTTON_DIST = 10;
-    private static final int DEFAULT_MENU_LABEL_TEXT_SIZE = 15;
+    private static final float DEFAULT_ARC_START_ANGLE = 90f;
+    private static final float DEFAULT_ARC_SWEEP_ANGLE = -90f;
+    private static final int MENU_LAYOUT_RADIAL = 1;
+    private static final int CHANGE_ANIMATION_DURATION = 200;
+
+    public static enum MenuLabelPosition {
+        LEFT(0), RIGHT(1);
+
+        // value of the menu_label_position attribute
+        final int id;
+        MenuLabelPosition(int id) {
+            this.id = id;
+        }
 
-    public static enum MenuLabelPosition{LEFT, RIGHT};
+        public static MenuLabelPosition fromId(int id) {
+            for (MenuLabelPosition pos : values()) {
+                if (pos.id == id) {
+                    return pos;
+                }
+            }
+            throw new IllegalArgumentException("" + id + " is an invalid MenuLabelPosition");
+        }
+    }
 
     private CircleButton mMainButton;
-    private int mMainButtonSize;
-    private Drawable mMainButtonBG;
     private int mMainButtonIndex = -1;
 
+    private Adapter mAdapter;
+    private OnMenuItemClickListener mOnMenuItemClickListener;
+    // both null unless metrics are requested
+    private OnMetricsListener mOnMetricsListener;
+    private MenuMetrics mMetrics;
+    // attached items, mMenuItems.get(k) shows adapter position mFirstPosition + k
     private List<CirclePopMenuItem> mMenuItems = new ArrayList<>();
-    private List<Drawable> mMenuButtonIcons = new ArrayList<>();
-    private List<String> mMenuButtonLabelTexts = new ArrayList<>();
+    private int mFirstPosition = 0;
+    // detached items waiting to be bound again, possibly shared with other menus
+    private final MenuItemPool mOwnItemPool = new MenuItemPool();
+    private MenuItemPool mItemPool = mOwnItemPool;
+    // items exist only from the first expand until a collapse finishes
+    private boolean mItemsMaterialized = false;
+    // widest item seen, keeps the collapsed size stable while no items are attached
+    private int mMaxItemWidth = 0;
+    private int mItemWidthMeasureSpec;
+    private int mItemHeightMeasureSpec;
 
-    private int mMenuButtonSize;
-    private Drawable mMenuButtonBG;
-    private int mMenuButtonSpacing;
+    // overlay mode, the menu measures to its main button and items live in a panel on top of the window
+    private boolean mOverlayItems;
+    private MenuItemPanel mItemPanel;
+    private ViewGroup mOverlayLayer;
+    private final int[] mTempLocation = new int[2];
+    private final Rect mTempRect = new Rect();
 
-    private int mMenuLabelTextSize;
-    private Drawable mMenuLabelBG;
+    // scrolling of menus higher than the available space
+    private int mScrollOffset = 0;
+    private int mTouchSlop;
+    private float mLastTouchY;
+    private boolean mIsScrolling = false;
+
+    // touch targets of the expanded items in item host coordinates, rebuilt with the animation targets
+    private final HitRegions mHitRegions = new HitRegions();
+    private final TouchState mTouchState = new TouchState();
+
+    // dragging the main button up expands the menu, a drag down collapses it
+    private boolean mDragToExpandEnabled = true;
+    private boolean mDownOnMainButton = false;
+    private boolean mIsDraggingExpand = false;
+    private float mDragDownX;
+    private float mDragDownY;
+    private float mDragStartProgress;
+    private VelocityTracker mVelocityTracker;
+    private int mMinFlingVelocity;
+    private int mMaxFlingVelocity;
+
+    // sizes and backgrounds, resolved once and handed to items and buttons
+    private final MenuStyle mStyle;
+    private final int mMainButtonSize;
+    private boolean mFlatMenuItems;
 
     private boolean mIsExpanded = false;
-    private boolean mExpandAnimPending = false;
     private MenuLabelPosition mMenuItemLabelPos = MenuLabelPosition.RIGHT;
 
+    // sizing, slot and animation math, the views only copy its results
+    private final MenuGeometry mGeometry = new MenuGeometry();
+    // measured heights of the attached items, indexed like mMenuItems
+    private int[] mItemHeights = new int[0];
+
+    // single animator driving mExpandProgress for all items and the main button
+    private ValueAnimator mMenuAnimator;
+    private float mExpandProgress = 0f;
+    private float mAnimFromProgress;
+    private float mAnimToProgress;
+
+    // set when the next layout pass can not reuse the previous item positions
+    private boolean mLayoutDirty = true;
+    private boolean mAnimationTargetsDirty = true;
+
+    // beginUpdate/commit nesting, layout requests wait for the outermost commit
+    private int mUpdateDepth = 0;
+    // set by a commit, the next measure pass matches the attached items to the new ids
+    private boolean mUpdatePending;
+    private final LongSparseArray<CirclePopMenuItem> mItemsById = new LongSparseArray<>();
+    // where the items of a committed update start from, indexed like mMenuItems, NaN for inserted items
+    private ValueAnimator mChangeAnimator;
+    private boolean mChangeAnimationPending;
+    private float[] mChangeFromX = new float[0];
+    private float[] mChangeFromY = new float[0];
+    private float[] mChangeFromAlpha = new float[0];
+    // items removed by the update, faded out before they go to the pool
+    private final List<CirclePopMenuItem> mRemovedItems = new ArrayList<>();
+    private float[] mRemovedFromAlpha = new float[0];
+
     public CirclePopMenu(Context context) {
         this(context, null);
     }
@@ -55,34 +157,305 @@ public class CirclePopMenu extends ViewGroup {
 
     public CirclePopMenu(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
-        int defaultMainButtonSize = (int) (getResources().getDisplayMetrics().density * DEFAULT_MAIN_BUTTON_SIZE + 0.5);
-        int defaultMenuButtonSize = (int) (getResources().getDisplayMetrics().density * DEFAULT_MENU_BUTTON_SIZE + 0.5);
-        int defaultMenuButtonDist = (int) (getResources().getDisplayMetrics().density * DEFAULT_MENU_BUTTON_DIST + 0.5);
-        int defaultMenuLabelSize = (int) (getResources().getDisplayMetrics().scaledDensity * DEFAULT_MENU_LABEL_TEXT_SIZE + 0.5);
-
         TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.CirclePopMenu, defStyleAttr, 0);
-        mMainButtonSize = ta.getDimensionPixelSize(R.styleable.CirclePopMenu_main_button_size, defaultMainButtonSize);
-        mMenuButtonSize = ta.getDimensionPixelSize(R.styleable.CirclePopMenu_menu_button_size, defaultMenuButtonSize);
-        mMenuButtonSpacing = ta.getDimensionPixelSize(R.styleable.CirclePopMenu_menu_button_spacing, defaultMenuButtonDist);
-        mMenuLabelTextSize = ta.getDimensionPixelSize(R.styleable.CirclePopMenu_menu_label_text_size, defaultMenuLabelSize);
-        mMainButtonBG = ta.getDrawable(R.styleable.CirclePopMenu_main_button_background);
+        mStyle = MenuStyle.fromAttributes(context, ta);
+        mMainButtonSize = mStyle.getMainButtonSize();
+        mFlatMenuItems = ta.getBoolean(R.styleable.CirclePopMenu_menu_item_flat, false);
+        mOverlayItems = ta.getBoolean(R.styleable.CirclePopMenu_menu_overlay_items, false);
+        boolean radial = ta.getInt(R.styleable.CirclePopMenu_menu_layout, 0) == MENU_LAYOUT_RADIAL;
+        float arcStartAngle = ta.getFloat(R.styleable.CirclePopMenu_menu_arc_start_angle, DEFAULT_ARC_START_ANGLE);
+        float arcSweepAngle = ta.getFloat(R.styleable.CirclePopMenu_menu_arc_sweep_angle, DEFAULT_ARC_SWEEP_ANGLE);
+        int arcRadius = ta.getDimensionPixelSize(R.styleable.CirclePopMenu_menu_arc_radius,
+                mMainButtonSize + mStyle.getMenuButtonSpacing());
+        int menuRes = ta.getResourceId(R.styleable.CirclePopMenu_menu_items, 0);
         ta.recycle();
+        mGeometry.setButtonSizes(mMainButtonSize, mStyle.getMenuButtonSize(), mStyle.getMenuButtonSpacing());
+        if (radial) {
+            mGeometry.setRadial(arcStartAngle, arcSweepAngle, arcRadius);
+        }
 
-        // setup main button
-        mMainButton = new CircleButton(getContext());
+        // setup main button, menu items are always added after it so its index stays put
+        mMainButton = new CircleButton(context, mStyle, mStyle.newMainButtonBackground(getResources()));
+        mMainButtonIndex = getChildCount();
+        mMainButton.setIconType(CircleButton.IconType.PLUS);
         addView(mMainButton);
         mMainButton.setOnClickListener(mMainButtonOnClickListener);
 
-        // test
-        for(int i = 0; i < 5; i++) {
-            CirclePopMenuItem menuItem = new CirclePopMenuItem(context, "menu "+i, getResources().getDrawable(R.drawable.copy));
-            menuItem.setMenuButtonSize(mMenuButtonSize);
-            menuItem.setAlpha(0);
-            addView(menuItem);
-            mMenuItems.add(menuItem);
-        }
+        mMenuAnimator = ValueAnimator.ofFloat(0f, 1f);
+        mMenuAnimator.setInterpolator(new LinearInterpolator());
+        mMenuAnimator.addUpdateListener(mMenuAnimatorUpdateListener);
+        mMenuAnimator.addListener(mMenuAnimatorListener);
+
+        mChangeAnimator = ValueAnimator.ofFloat(0f, 1f);
+        mChangeAnimator.setDuration(CHANGE_ANIMATION_DURATION);
+        mChangeAnimator.setInterpolator(new DecelerateInterpolator());
+        mChangeAnimator.addUpdateListener(mChangeAnimatorUpdateListener);
+        mChangeAnimator.addListener(mChangeAnimatorListener);
 
+        ViewConfiguration vc = ViewConfiguration.get(context);
+        mTouchSlop = vc.getScaledTouchSlop();
+        mMinFlingVelocity = vc.getScaledMinimumFlingVelocity();
+        mMaxFlingVelocity = vc.getScaledMaximumFlingVelocity();
         setChildrenDrawingOrderEnabled(true);
+
+        if (menuRes != 0) {
+            setMenuResource(menuRes);
+        }
+    }
+
+    public MenuStyle getMenuStyle() {
+        return mStyle;
+    }
+
+    public void setAdapter(Adapter adapter) {
+        if (mAdapter == adapter) {
+            return;
+        }
+        if (mAdapter != null) {
+            mAdapter.unregisterDataSetObserver(mDataSetObserver);
+        }
+        mAdapter = adapter;
+        if (mAdapter != null) {
+            mAdapter.registerDataSetObserver(mDataSetObserver);
+        }
+        onDataSetChanged();
+    }
+
+    public Adapter getAdapter() {
+        return mAdapter;
+    }
+
+    /**
+     * Shows the items of a menu resource, see {@link MenuResource}. The resource is parsed
+     * once and shared with every other menu showing it, and item clicks report the
+     * {@code android:id} of the item.
+     */
+    public void setMenuResource(int resId) {
+        MenuResource menu = MenuResource.get(getContext(), resId);
+        if (menu.getLabelPosition() != null) {
+            setMenuLabelPosition(menu.getLabelPosition());
+        }
+        setAdapter(new ResourceAdapter(menu));
+    }
+
+    public void setMenuLabelPosition(MenuLabelPosition pos) {
+        if (mMenuItemLabelPos == pos) {
+            return;
+        }
+        mMenuItemLabelPos = pos;
+        for (int i = 0; i < mMenuItems.size(); i++) {
+            mMenuItems.get(i).setMenuLabelPosition(pos);
+        }
+        mLayoutDirty = true;
+        requestItemsLayout();
+    }
+
+    public MenuLabelPosition getMenuLabelPosition() {
+        return mMenuItemLabelPos;
+    }
+
+    /**
+     * Flat items draw button and label from a single view, see {@link CirclePopMenuItem#isFlat()}.
+     */
+    public void setFlatMenuItems(boolean flat) {
+        if (mFlatMenuItems == flat) {
+            return;
+        }
+        mFlatMenuItems = flat;
+        // the pool keeps both kinds apart
+        recycleItems(0, mMenuItems.size());
+        requestItemsLayout();
+    }
+
+    public boolean isFlatMenuItems() {
+        return mFlatMenuItems;
+    }
+
+    /**
+     * Builds the layouts of the given labels off the ui thread with this menu's
+     * label text style, so the first expand finds them in {@link LabelLayoutCache}.
+     */
+    public void prewarmLabels(CharSequence... labels) {
+        LabelLayoutCache.warmUp(mStyle.getLabelTextSize(), mStyle.getLabelTypeface(), mStyle.getLabelTextColor(),
+                labels);
+    }
+
+    /**
+     * Spreads the items on an arc around the main button instead of stacking them above it.
+     * Angles are in degrees, 0 points away from the side the main button sits on and positive
+     * angles turn up, so the arc mirrors with the label position. The default arc starts at 90
+     * and sweeps -90. Items not fitting on the arc continue on outer rings.
+     */
+    public void setRadialLayout(float startAngle, float sweepAngle, int radius) {
+        mGeometry.setRadial(startAngle, sweepAngle, radius);
+        mLayoutDirty = true;
+        requestItemsLayout();
+    }
+
+    /**
+     * Stacks the items above the main button, scrolling them when they do not fit.
+     */
+    public void setLinearLayout() {
+        mGeometry.setLinear();
+        mLayoutDirty = true;
+        requestItemsLayout();
+    }
+
+    public boolean isRadialLayout() {
+        return mGeometry.isRadial();
+    }
+
+    /**
+     * In overlay mode the menu measures to its main button only, and the items are drawn in a
+     * layer on top of the window content while the menu is expanded. Host layouts then neither
+     * reserve the expanded size nor lay out again when items come and go.
+     */
+    public void setOverlayItems(boolean overlay) {
+        if (mOverlayItems == overlay) {
+            return;
+        }
+        final boolean materialized = mItemsMaterialized;
+        releaseItems();
+        mOverlayItems = overlay;
+        mLayoutDirty = true;
+        requestLayout();
+        if (materialized) {
+            materializeItems();
+        }
+    }
+
+    public boolean isOverlayItems() {
+        return mOverlayItems;
+    }
+
+    /**
+     * Lets menus share their items, typically the menus of list rows. A menu takes items from
+     * the pool when it expands and gives them back once collapsed, opening one menu collapses
+     * the menu of the same pool that is still open. Null returns to a pool of this menu's own.
+     */
+    public void setItemPool(MenuItemPool pool) {
+        if (pool == null) {
+            pool = mOwnItemPool;
+        }
+        if (mItemPool == pool) {
+            return;
+        }
+        final boolean materialized = mItemsMaterialized;
+        releaseItems();
+        mItemPool = pool;
+        if (materialized) {
+            materializeItems();
+        }
+    }
+
+    public MenuItemPool getItemPool() {
+        return mItemPool;
+    }
+
+    /**
+     * Replaces the plus of the main button, the renderer gets the expand progress of the menu.
+     */
+    public void setMainButtonIconRenderer(IconRenderer renderer) {
+        mMainButton.setIconRenderer(renderer);
+    }
+
+    public void setOnMenuItemClickListener(OnMenuItemClickListener listener) {
+        mOnMenuItemClickListener = listener;
+    }
+
+    /**
+     * Starts collecting {@link MenuMetrics} and reports them after every expand and collapse,
+     * null stops collecting. Without a listener the instrumentation costs a null check.
+     */
+    public void setOnMetricsListener(OnMetricsListener listener) {
+        mOnMetricsListener = listener;
+        if (listener != null && mMetrics == null) {
+            WindowManager wm = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+            mMetrics = new MenuMetrics(wm.getDefaultDisplay().getRefreshRate());
+        } else if (listener == null) {
+            mMetrics = null;
+        }
+        mMainButton.setMetrics(mMetrics);
+        for (int i = 0; i < mMenuItems.size(); i++) {
+            mMenuItems.get(i).setMetrics(mMetrics);
+        }
+    }
+
+    /**
+     * The metrics collected so far, null without a metrics listener.
+     */
+    MenuMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Creates, binds and measures the items of the first expand once the main thread is idle,
+     * so a menu which has never been expanded can still open within one frame. The items stay
+     * detached until then.
+     */
+    public void prewarmItemsWhenIdle() {
+        Looper.myQueue().addIdleHandler(mPrewarmIdleHandler);
+    }
+
+    /**
+     * Starts a batch of adapter changes, the menu neither lays out nor rebinds until the
+     * matching {@link #commit()}. Calls may nest, the outermost commit applies them.
+     */
+    public void beginUpdate() {
+        if (mUpdateDepth++ == 0) {
+            finishChangeAnimation();
+        }
+    }
+
+    /**
+     * Applies the adapter changes since {@link #beginUpdate()} in a single layout pass.
+     * Attached items are matched to the new positions by {@link Adapter#getItemId(int)}:
+     * items whose id is still there are bound again and move to their new slots, items of
+     * new ids fade in and items of removed ids fade out. Without stable ids every item
+     * counts as kept and is rebound in place.
+     */
+    public void commit() {
+        if (mUpdateDepth == 0) {
+            throw new IllegalStateException("commit() without beginUpdate()");
+        }
+        if (--mUpdateDepth > 0) {
+            return;
+        }
+        if (!mItemsMaterialized) {
+            onDataSetChanged();
+            return;
+        }
+        mUpdatePending = true;
+        mMaxItemWidth = 0;
+        requestItemsLayout();
+        invalidate();
+    }
+
+    boolean isUpdating() {
+        return mUpdateDepth > 0;
+    }
+
+    @Override
+    public void requestLayout() {
+        if (mUpdateDepth > 0) {
+            // items changed by the update ask for layout one by one, commit asks once
+            return;
+        }
+        super.requestLayout();
+    }
+
+    private void onDataSetChanged() {
+        if (mUpdateDepth > 0) {
+            // the commit matches the items to the new data
+            return;
+        }
+        finishChangeAnimation();
+        // all attached items go to the pool and get rebound by the next measure pass
+        recycleItems(0, mMenuItems.size());
+        mMaxItemWidth = 0;
+        mScrollOffset = 0;
+        requestItemsLayout();
+        invalidate();
     }
 
     @Override
@@ -101,109 +474,1195 @@ public class CirclePopMenu extends ViewGroup {
         }
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mIsExpanded && mOverlayItems) {
+            materializeItems();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // jump to the final state, nothing is left half expanded
+        mMenuAnimator.end();
+        Looper.myQueue().removeIdleHandler(mPrewarmIdleHandler);
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+        mIsDraggingExpand = false;
+        mDownOnMainButton = false;
+        if (mItemPool != mOwnItemPool) {
+            // a recycled row must not keep items the other rows could use
+            setExpand(false, false);
+        } else if (mOverlayItems) {
+            // the panel belongs to this window, an expanded menu gets a new one when attached again
+            releaseItems();
+        }
+    }
+
+    /**
+     * Saves the expanded state and scroll position. Items are not saved, they are bound
+     * again from the adapter, and decoded icons and label layouts stay in their process
+     * wide caches.
+     */
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState ss = new SavedState(super.onSaveInstanceState());
+        ss.expanded = mIsExpanded;
+        ss.scrollOffset = mScrollOffset;
+        return ss;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+        // clamped by the next measure pass
+        mScrollOffset = ss.scrollOffset;
+        // items land on their final transforms in the first layout pass, nothing is animated
+        setExpand(ss.expanded, false);
+    }
+
     public boolean isExpanded() {
         return mIsExpanded;
     }
 
     public void setExpand(boolean expand) {
+        setExpand(expand, true);
+    }
+
+    public void setExpand(boolean expand, boolean animate) {
+        if (!animate) {
+            setExpandProgress(expand ? 1f : 0f);
+            return;
+        }
+        if (mIsExpanded == expand && !mMenuAnimator.isRunning() && mExpandProgress == (expand ? 1f : 0f)) {
+            return;
+        }
+        mIsExpanded = expand;
+        if (expand) {
+            materializeItems();
+        }
+        startMenuAnimation(Long.MAX_VALUE);
+    }
+
+    /**
+     * Positions items and main button for any progress between collapsed (0) and expanded (1),
+     * stopping a running animation. The menu counts as expanded from 0.5 on. Once the items
+     * exist this does not allocate, so it can follow a gesture or another animation every frame.
+     */
+    public void setExpandProgress(float progress) {
+        progress = Math.max(0f, Math.min(1f, progress));
+        mMenuAnimator.cancel();
+        finishChangeAnimation();
+        mIsExpanded = progress >= 0.5f;
+        if (progress > 0f) {
+            materializeItems();
+        }
+        applyExpandProgress(progress);
+        if (progress == 0f) {
+            releaseItems();
+        }
+    }
+
+    public float getExpandProgress() {
+        return mExpandProgress;
+    }
+
+    public void setDragToExpandEnabled(boolean enabled) {
+        mDragToExpandEnabled = enabled;
+    }
+
+    public boolean isDragToExpandEnabled() {
+        return mDragToExpandEnabled;
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final MenuMetrics metrics = mMetrics;
+        if (metrics == null) {
+            measureMenu(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+        final long start = System.nanoTime();
+        measureMenu(widthMeasureSpec, heightMeasureSpec);
+        metrics.record(MenuMetrics.VIEW_MENU, MenuMetrics.PASS_MEASURE, start);
+    }
+
+    private void measureMenu(int widthMeasureSpec, int heightMeasureSpec) {
         int width = MeasureSpec.getSize(widthMeasureSpec);
         int height = MeasureSpec.getSize(heightMeasureSpec);
 
         mMainButton.measure(MeasureSpec.makeMeasureSpec(mMainButtonSize, MeasureSpec.EXACTLY),
                 MeasureSpec.makeMeasureSpec(mMainButtonSize, MeasureSpec.EXACTLY));
-        int maxMenuItemWidth = 0;
-        int totalMenuItemHeight = 0;
-        for(int i = 0; i < mMenuItems.size(); i++) {
-            mMenuItems.get(i).measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.AT_MOST),
-                    MeasureSpec.makeMeasureSpec(height, MeasureSpec.AT_MOST));
-            maxMenuItemWidth = Math.max(maxMenuItemWidth, mMenuItems.get(i).getMeasuredWidth());
-            totalMenuItemHeight += mMenuItems.get(i).getMeasuredHeight();
-        }
 
-        int totalContentWidth = maxMenuItemWidth;
-        int totalContentHeight = totalMenuItemHeight + mMainButtonSize + mMenuItems.size()*mMenuButtonSpacing;
-        if(mMainButtonSize > mMenuButtonSize) {
-            totalContentWidth = Math.max(mMainButtonSize,
-                    totalContentWidth + (mMainButtonSize-mMenuButtonSize)/2);
+        if (mOverlayItems) {
+            // items are measured by the panel
+            setMeasuredDimension(getPaddingLeft() + getPaddingRight() + mMainButtonSize,
+                    getPaddingTop() + getPaddingBottom() + mMainButtonSize);
+            return;
         }
 
-        int vertPadding = getPaddingBottom() + getPaddingTop();
-        int horiPadding = getPaddingLeft() + getPaddingRight();
-        setMeasuredDimension(horiPadding + totalContentWidth, vertPadding + totalContentHeight);
+        // every slot is one menu button high, only the visible ones are materialized
+        mGeometry.setPadding(getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom());
+        mGeometry.setLabelsLeft(mMenuItemLabelPos == MenuLabelPosition.LEFT);
+        final int count = mAdapter == null ? 0 : mAdapter.getCount();
+        int measuredHeight = mGeometry.measureHeight(count, heightMeasureSpec);
+        mScrollOffset = mGeometry.clampScrollOffset(mScrollOffset);
+        fillVisibleItems();
 
-        for(int i = 0; i < getChildCount(); i++) {
-            if(getChildAt(i) == mMainButton) {
-                mMainButtonIndex = i;
-                break;
+        mItemWidthMeasureSpec = MeasureSpec.makeMeasureSpec(width, MeasureSpec.AT_MOST);
+        mItemHeightMeasureSpec = MeasureSpec.makeMeasureSpec(height, MeasureSpec.AT_MOST);
+        if (mItemsMaterialized) {
+            int maxMenuItemWidth = 0;
+            for(int i = 0; i < mMenuItems.size(); i++) {
+                mMenuItems.get(i).measure(mItemWidthMeasureSpec, mItemHeightMeasureSpec);
+                maxMenuItemWidth = Math.max(maxMenuItemWidth, mMenuItems.get(i).getMeasuredWidth());
             }
+            mMaxItemWidth = maxMenuItemWidth;
         }
+
+        setMeasuredDimension(mGeometry.measureWidth(mMaxItemWidth), measuredHeight);
     }
 
     @Override
-    protected void onLayout(boolean b, int i, int i1, int i2, int i3) {
+    public void setPadding(int left, int top, int right, int bottom) {
+        mLayoutDirty = true;
+        super.setPadding(left, top, right, bottom);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        final MenuMetrics metrics = mMetrics;
+        if (metrics == null) {
+            layoutMenu(changed);
+            return;
+        }
+        final long start = System.nanoTime();
+        layoutMenu(changed);
+        metrics.record(MenuMetrics.VIEW_MENU, MenuMetrics.PASS_LAYOUT, start);
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        final MenuMetrics metrics = mMetrics;
+        if (metrics == null) {
+            super.dispatchDraw(canvas);
+            return;
+        }
+        final long start = System.nanoTime();
+        super.dispatchDraw(canvas);
+        metrics.record(MenuMetrics.VIEW_MENU, MenuMetrics.PASS_DRAW, start);
+    }
+
+    private void layoutMenu(boolean changed) {
+        if (mOverlayItems) {
+            mMainButton.layout(getPaddingLeft(), getPaddingTop(),
+                    getPaddingLeft()+mMainButtonSize, getPaddingTop()+mMainButtonSize);
+            syncPanelPosition();
+            return;
+        }
+
         // layout main button
-        int ml = getPaddingLeft();
-        int mr = getMeasuredHeight()-getPaddingBottom();
-        int mb = getMeasuredHeight() - getPaddingBottom();
-        if(mMenuItemLabelPos == MenuLabelPosition.RIGHT) {
-            mMainButton.layout(ml, mb-mMainButtonSize, ml+mMainButtonSize, mb);
+        mGeometry.setSize(getMeasuredWidth(), getMeasuredHeight());
+        int ml = mGeometry.getMainButtonLeft();
+        int mt = mGeometry.getMainButtonTop();
+        mMainButton.layout(ml, mt, ml+mMainButtonSize, mt+mMainButtonSize);
+        layoutItems(changed);
+    }
+
+    /**
+     * Measures the items in overlay mode, the panel may grow up to the main button bottom.
+     */
+    void measurePanel(int widthMeasureSpec, int heightMeasureSpec) {
+        updateOverlayAnchor();
+        final int mainBottom = mTempLocation[1] + mMainButtonSize;
+        mGeometry.setPadding(0, 0, 0, 0);
+        mGeometry.setLabelsLeft(mMenuItemLabelPos == MenuLabelPosition.LEFT);
+        final int count = mAdapter == null ? 0 : mAdapter.getCount();
+        mGeometry.measureHeight(count, MeasureSpec.makeMeasureSpec(Math.max(mainBottom, mMainButtonSize), MeasureSpec.AT_MOST));
+        mScrollOffset = mGeometry.clampScrollOffset(mScrollOffset);
+        fillVisibleItems();
+
+        mItemWidthMeasureSpec = MeasureSpec.makeMeasureSpec(MeasureSpec.getSize(widthMeasureSpec), MeasureSpec.AT_MOST);
+        mItemHeightMeasureSpec = MeasureSpec.makeMeasureSpec(MeasureSpec.getSize(heightMeasureSpec), MeasureSpec.AT_MOST);
+        int maxMenuItemWidth = 0;
+        for(int i = 0; i < mMenuItems.size(); i++) {
+            mMenuItems.get(i).measure(mItemWidthMeasureSpec, mItemHeightMeasureSpec);
+            maxMenuItemWidth = Math.max(maxMenuItemWidth, mMenuItems.get(i).getMeasuredWidth());
         }
-        else {
-            mMainButton.layout(mr-mMainButtonSize, mb-mMainButtonSize, mr, mb);
+        mMaxItemWidth = maxMenuItemWidth;
+        mGeometry.measureWidth(mMaxItemWidth);
+    }
+
+    int getPanelWidth() {
+        return mGeometry.getWidth();
+    }
+
+    int getPanelHeight() {
+        return mGeometry.getHeight();
+    }
+
+    void layoutPanel(boolean changed) {
+        mGeometry.setSize(mItemPanel.getMeasuredWidth(), mItemPanel.getMeasuredHeight());
+        layoutItems(changed);
+        syncPanelPosition();
+    }
+
+    /**
+     * Leaves the main button position relative to the overlay layer in mTempLocation.
+     */
+    private void updateOverlayAnchor() {
+        getLocationInWindow(mTempLocation);
+        final int menuX = mTempLocation[0];
+        final int menuY = mTempLocation[1];
+        mOverlayLayer.getLocationInWindow(mTempLocation);
+        mTempLocation[0] = menuX - mTempLocation[0] + getPaddingLeft();
+        mTempLocation[1] = menuY - mTempLocation[1] + getPaddingTop();
+    }
+
+    /**
+     * Moves the panel so its main button slot covers the main button, without a layout pass.
+     */
+    private void syncPanelPosition() {
+        if (!isPanelAttached()) {
+            return;
         }
+        updateOverlayAnchor();
+        mItemPanel.setTranslationX(mTempLocation[0] - mGeometry.getMainButtonLeft());
+        mItemPanel.setTranslationY(mTempLocation[1] - mGeometry.getMainButtonTop());
+    }
+
+    private void layoutItems(boolean changed) {
+        final boolean relayoutAll = changed || mLayoutDirty;
+        mLayoutDirty = false;
 
-        // layout menu buttons
+        // layout menu buttons, only the ones whose size or content changed
+        boolean itemsMoved = relayoutAll;
         for(int j = mMenuItems.size() - 1; j >= 0; j--) {
             View menu = mMenuItems.get(j);
-            int bottom = mb - (mMainButtonSize - menu.getMeasuredHeight()) / 2;
-            if (mMenuItemLabelPos == MenuLabelPosition.RIGHT) {
-                int left = ml + (mMainButtonSize-mMenuButtonSize)/2 - menu.getPaddingLeft();
-                menu.layout(left, bottom-menu.getMeasuredHeight(), left+menu.getMeasuredWidth(), bottom);
+            if (relayoutAll || menu.isLayoutRequested()
+                    || menu.getWidth() != menu.getMeasuredWidth()
+                    || menu.getHeight() != menu.getMeasuredHeight()) {
+                layoutMenuItem(menu);
+                itemsMoved = true;
             }
-            else if(mMenuItemLabelPos == MenuLabelPosition.LEFT) {
-                int right = mr-(mMainButtonSize-mMenuButtonSize)/2+menu.getPaddingRight();
-                menu.layout(right-menu.getMeasuredWidth(), bottom-menu.getMeasuredHeight(), right, bottom);
+        }
+
+        if (itemsMoved || mAnimationTargetsDirty) {
+            mAnimationTargetsDirty = false;
+            computeMenuAnimationTargets();
+            applyExpandProgress(mExpandProgress);
+        }
+        if (mChangeAnimationPending) {
+            startChangeAnimation();
+        }
+    }
+
+    private void layoutMenuItem(View menu) {
+        // every item sits on the main button, translation moves it to its slot
+        int left = mGeometry.getItemLeft(menu.getMeasuredWidth(), menu.getPaddingLeft(), menu.getPaddingRight());
+        int top = mGeometry.getItemTop(menu.getMeasuredHeight());
+        menu.layout(left, top, left+menu.getMeasuredWidth(), top+menu.getMeasuredHeight());
+    }
+
+    /**
+     * Binds items for the positions whose slots intersect the visible area and recycles the others.
+     * Newly bound items still need to be measured and laid out.
+     */
+    private void fillVisibleItems() {
+        if (!mItemsMaterialized) {
+            mUpdatePending = false;
+            recycleItems(0, mMenuItems.size());
+            return;
+        }
+        final int count = mAdapter == null ? 0 : mAdapter.getCount();
+        int first = mGeometry.getFirstVisiblePosition(mScrollOffset);
+        int last = mGeometry.getLastVisiblePosition(count, mScrollOffset);
+        if (mUpdatePending) {
+            mUpdatePending = false;
+            fillUpdatedItems(first, last);
+            return;
+        }
+        if (first > last) {
+            recycleItems(0, mMenuItems.size());
+            mFirstPosition = 0;
+            return;
+        }
+
+        // drop items scrolled out on either side
+        int attachedLast = mFirstPosition + mMenuItems.size() - 1;
+        if (mMenuItems.isEmpty() || attachedLast < first || mFirstPosition > last) {
+            recycleItems(0, mMenuItems.size());
+            mFirstPosition = first;
+        } else {
+            if (attachedLast > last) {
+                recycleItems(last - mFirstPosition + 1, mMenuItems.size());
+            }
+            if (mFirstPosition < first) {
+                recycleItems(0, first - mFirstPosition);
+                mFirstPosition = first;
             }
         }
+
+        // add the missing ones
+        while (mFirstPosition > first) {
+            mFirstPosition--;
+            mMenuItems.add(0, obtainItem(mFirstPosition));
+        }
+        while (mFirstPosition + mMenuItems.size() - 1 < last) {
+            mMenuItems.add(obtainItem(mFirstPosition + mMenuItems.size()));
+        }
+    }
+
+    /**
+     * Matches the attached items to the visible positions of a committed update by their
+     * ids, and records where each one starts its change animation from.
+     */
+    private void fillUpdatedItems(int first, int last) {
+        mItemsById.clear();
+        for (int i = 0; i < mMenuItems.size(); i++) {
+            CirclePopMenuItem item = mMenuItems.get(i);
+            CirclePopMenuItem displaced = mItemsById.get(item.getItemId());
+            if (displaced != null) {
+                // ids are not unique, only one item of an id can be matched
+                addRemovedItem(displaced);
+            }
+            mItemsById.put(item.getItemId(), item);
+        }
+        mMenuItems.clear();
+        mFirstPosition = first <= last ? first : 0;
+
+        final int size = Math.max(0, last - first + 1);
+        if (mChangeFromX.length < size) {
+            mChangeFromX = new float[size];
+            mChangeFromY = new float[size];
+            mChangeFromAlpha = new float[size];
+        }
+        for (int position = first; position <= last; position++) {
+            final long id = mAdapter.getItemId(position);
+            CirclePopMenuItem item = mItemsById.get(id);
+            final int i = position - first;
+            if (item != null) {
+                mItemsById.remove(id);
+                // kept in place, the layout pass moves it to its new slot
+                mChangeFromX[i] = item.getLeft() + item.getTranslationX();
+                mChangeFromY[i] = item.getTop() + item.getTranslationY();
+                mChangeFromAlpha[i] = item.getAlpha();
+                item.bind(position, id);
+                mAdapter.onBindMenuItem(item, position);
+                mAnimationTargetsDirty = true;
+            } else {
+                item = obtainItem(position);
+                mChangeFromX[i] = Float.NaN;
+                mChangeFromY[i] = Float.NaN;
+                mChangeFromAlpha[i] = 0f;
+            }
+            mMenuItems.add(item);
+        }
+
+        // the ids left over are gone
+        for (int i = 0; i < mItemsById.size(); i++) {
+            addRemovedItem(mItemsById.valueAt(i));
+        }
+        mItemsById.clear();
+        mChangeAnimationPending = true;
+    }
+
+    private void addRemovedItem(CirclePopMenuItem item) {
+        final int index = mRemovedItems.size();
+        if (mRemovedFromAlpha.length <= index) {
+            float[] alphas = new float[Math.max(index + 1, mRemovedFromAlpha.length * 2)];
+            System.arraycopy(mRemovedFromAlpha, 0, alphas, 0, index);
+            mRemovedFromAlpha = alphas;
+        }
+        item.setPressed(false);
+        mRemovedFromAlpha[index] = item.getAlpha();
+        mRemovedItems.add(item);
+    }
+
+    private CirclePopMenuItem obtainItem(int position) {
+        CirclePopMenuItem item = mItemPool.acquire(mFlatMenuItems);
+        if (item == null) {
+            item = createItem();
+        }
+        prepareItem(item, position);
+        if (isPanelAttached()) {
+            mItemPanel.attachItem(item);
+        } else {
+            addViewInLayout(item, -1, generateDefaultLayoutParams(), true);
+        }
+        mAnimationTargetsDirty = true;
+        return item;
+    }
+
+    private CirclePopMenuItem createItem() {
+        return new CirclePopMenuItem(getContext(), mStyle, mFlatMenuItems);
+    }
+
+    private void prepareItem(CirclePopMenuItem item, int position) {
+        // a shared pool hands out items another menu set up
+        item.setOnClickListener(mMenuItemOnClickListener);
+        item.setMetrics(mMetrics);
+        item.setStyle(mStyle);
+        item.setMenuLabelPosition(mMenuItemLabelPos);
+        item.setAlpha(0);
+        item.setTranslationX(0);
+        item.setTranslationY(0);
+        item.bind(position, mAdapter.getItemId(position));
+        mAdapter.onBindMenuItem(item, position);
+    }
+
+    private void recycleItems(int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            detachItem(mMenuItems.remove(i));
+            mAnimationTargetsDirty = true;
+        }
+    }
+
+    private void detachItem(CirclePopMenuItem item) {
+        item.setPressed(false);
+        if (isPanelAttached()) {
+            mItemPanel.detachItem(item);
+        } else {
+            removeViewInLayout(item);
+        }
+        mItemPool.release(item);
+    }
+
+    private void scrollMenuBy(int dy) {
+        int offset = mGeometry.clampScrollOffset(mScrollOffset + dy);
+        if (offset == mScrollOffset) {
+            return;
+        }
+        finishChangeAnimation();
+        mScrollOffset = offset;
+        attachVisibleItems();
+    }
+
+    /**
+     * Binds, measures and lays out the items of positions which became visible, outside of
+     * a layout pass. The menu is only laid out again if a new item does not fit its width.
+     */
+    private void attachVisibleItems() {
+        int oldCount = mMenuItems.size();
+        int oldFirst = mFirstPosition;
+        fillVisibleItems();
+
+        boolean needsRelayout = false;
+        for (int i = 0; i < mMenuItems.size(); i++) {
+            CirclePopMenuItem item = mMenuItems.get(i);
+            int position = mFirstPosition + i;
+            if (position >= oldFirst && position < oldFirst + oldCount) {
+                continue;
+            }
+            item.measure(mItemWidthMeasureSpec, mItemHeightMeasureSpec);
+            if (item.getMeasuredWidth() > mMaxItemWidth) {
+                mMaxItemWidth = item.getMeasuredWidth();
+                needsRelayout = true;
+            }
+            layoutMenuItem(item);
+        }
+        mAnimationTargetsDirty = false;
+        computeMenuAnimationTargets();
+        applyExpandProgress(mExpandProgress);
+        if (mChangeAnimationPending) {
+            startChangeAnimation();
+        }
+        if (needsRelayout) {
+            requestItemsLayout();
+        }
+    }
+
+    private void materializeItems() {
+        if (mItemsMaterialized) {
+            return;
+        }
+        mItemsMaterialized = true;
+        mItemPool.onMenuOpened(this);
+        if (mOverlayItems) {
+            // the panel attaches them in its first layout pass, before the next frame is drawn
+            if (!attachPanel()) {
+                mItemsMaterialized = false;
+                D("no content frame to show overlay items in");
+            }
+            return;
+        }
+        if (getMeasuredHeight() == 0) {
+            // not measured yet, the first layout pass attaches them
+            requestLayout();
+            return;
+        }
+        attachVisibleItems();
+    }
+
+    private boolean attachPanel() {
+        mOverlayLayer = MenuItemPanel.obtainLayer(this);
+        if (mOverlayLayer == null) {
+            return false;
+        }
+        if (mItemPanel == null) {
+            mItemPanel = new MenuItemPanel(getContext(), this);
+        }
+        mOverlayLayer.addView(mItemPanel, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        // keeps the panel on the main button while the menu is scrolled or moved by its parents
+        getViewTreeObserver().addOnPreDrawListener(mPanelPositionListener);
+        return true;
+    }
+
+    private boolean isPanelAttached() {
+        return mItemPanel != null && mItemPanel.getParent() != null;
+    }
+
+    private void detachPanel() {
+        if (!isPanelAttached()) {
+            return;
+        }
+        getViewTreeObserver().removeOnPreDrawListener(mPanelPositionListener);
+        mOverlayLayer.removeView(mItemPanel);
+        MenuItemPanel.releaseLayer(mOverlayLayer);
+        mOverlayLayer = null;
+    }
+
+    private void requestItemsLayout() {
+        requestLayout();
+        if (isPanelAttached()) {
+            mItemPanel.requestLayout();
+        }
+    }
+
+    /**
+     * Detaches all items once the menu is fully collapsed, they wait in the pool for the next expand.
+     */
+    private void releaseItems() {
+        if (!mItemsMaterialized) {
+            return;
+        }
+        mItemsMaterialized = false;
+        finishChangeAnimation();
+        mItemPool.onMenuClosed(this);
+        recycleItems(0, mMenuItems.size());
+        computeMenuAnimationTargets();
+        detachPanel();
+        invalidate();
+    }
+
+    private void prewarmItems() {
+        if (mItemsMaterialized || mAdapter == null || !mItemPool.isEmpty(mFlatMenuItems)) {
+            return;
+        }
+        final int count = mAdapter.getCount();
+        if (mOverlayItems) {
+            // the panel has not been measured yet, the window bounds it
+            View root = getRootView();
+            mGeometry.setPadding(0, 0, 0, 0);
+            mGeometry.setLabelsLeft(mMenuItemLabelPos == MenuLabelPosition.LEFT);
+            mGeometry.measureHeight(count, MeasureSpec.makeMeasureSpec(root.getHeight(), MeasureSpec.AT_MOST));
+            mItemWidthMeasureSpec = MeasureSpec.makeMeasureSpec(root.getWidth(), MeasureSpec.AT_MOST);
+            mItemHeightMeasureSpec = MeasureSpec.makeMeasureSpec(root.getHeight(), MeasureSpec.AT_MOST);
+        }
+        final int first = mGeometry.getFirstVisiblePosition(mScrollOffset);
+        final int last = mGeometry.getLastVisiblePosition(count, mScrollOffset);
+        boolean widthChanged = false;
+        // pushed last to first, so the pool hands them out again to the positions they were bound to
+        for (int position = last; position >= first; position--) {
+            CirclePopMenuItem item = createItem();
+            prepareItem(item, position);
+            item.measure(mItemWidthMeasureSpec, mItemHeightMeasureSpec);
+            if (item.getMeasuredWidth() > mMaxItemWidth) {
+                mMaxItemWidth = item.getMeasuredWidth();
+                widthChanged = true;
+            }
+            mItemPool.release(item);
+        }
+        if (widthChanged) {
+            requestItemsLayout();
+        }
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        return dispatchHostTouchEvent(this, mTouchState, ev);
+    }
+
+    @Override
+    public void requestDisallowInterceptTouchEvent(boolean disallowIntercept) {
+        mTouchState.disallowIntercept = disallowIntercept;
+        super.requestDisallowInterceptTouchEvent(disallowIntercept);
+    }
+
+    /**
+     * Routes a touch on the menu or the overlay panel to the main button or item under it
+     * by their hit regions, instead of walking the children by their rectangular bounds.
+     * A touch going down outside of every region is not taken, so it reaches the views
+     * underneath. The host's own intercept and touch handling still apply, unless the
+     * target disallowed intercepting like it can with any ViewGroup.
+     */
+    boolean dispatchHostTouchEvent(ViewGroup host, TouchState state, MotionEvent ev) {
+        if (!host.onFilterTouchEventForSecurity(ev)) {
+            return false;
+        }
+        final int action = ev.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            state.intercepted = false;
+            state.disallowIntercept = false;
+            state.target = findTouchTarget(host, ev.getX(), ev.getY());
+            if (state.target == null) {
+                return false;
+            }
+        } else if (state.target == null && !state.intercepted) {
+            return false;
+        }
+
+        boolean handled = true;
+        if (!state.intercepted && !state.disallowIntercept && host.onInterceptTouchEvent(ev)) {
+            // the target gets a cancel instead of a click
+            state.intercepted = true;
+            final int oldAction = ev.getAction();
+            ev.setAction(MotionEvent.ACTION_CANCEL);
+            dispatchToTarget(host, state.target, ev);
+            ev.setAction(oldAction);
+            state.target = null;
+        } else if (state.intercepted) {
+            handled = host.onTouchEvent(ev);
+        } else if (state.target.getParent() == host) {
+            handled = dispatchToTarget(host, state.target, ev);
+        } else {
+            // recycled while touched
+            state.target = null;
+            handled = false;
+        }
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            state.target = null;
+            state.intercepted = false;
+            state.disallowIntercept = false;
+        }
+        return handled || action == MotionEvent.ACTION_DOWN;
+    }
+
+    private View findTouchTarget(ViewGroup host, float x, float y) {
+        if (host == this && isOnMainButton(x, y)) {
+            return mMainButton;
+        }
+        // items take touches only where they rest fully expanded, their regions are stale
+        // until the next layout pass once items were added or removed
+        if (host != getItemHost() || mExpandProgress < 1f || mMenuAnimator.isRunning()
+                || mAnimationTargetsDirty) {
+            return null;
+        }
+        final int index = mHitRegions.hitTest(x + host.getScrollX(), y + host.getScrollY());
+        return index == HitRegions.NO_HIT || index >= mMenuItems.size() ? null : mMenuItems.get(index);
+    }
+
+    private boolean isOnMainButton(float x, float y) {
+        final float radius = mMainButton.getWidth() / 2f;
+        final float dx = x + getScrollX() - mMainButton.getLeft() - radius;
+        final float dy = y + getScrollY() - mMainButton.getTop() - radius;
+        return dx * dx + dy * dy <= radius * radius;
+    }
+
+    private static boolean dispatchToTarget(ViewGroup host, View target, MotionEvent ev) {
+        final float dx = host.getScrollX() - target.getLeft() - target.getTranslationX();
+        final float dy = host.getScrollY() - target.getTop() - target.getTranslationY();
+        ev.offsetLocation(dx, dy);
+        final boolean handled = target.dispatchTouchEvent(ev);
+        ev.offsetLocation(-dx, -dy);
+        return handled;
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        if (interceptExpandDrag(ev)) {
+            return true;
+        }
+        return interceptScroll(ev);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent ev) {
+        if (mIsDraggingExpand) {
+            onExpandDragTouchEvent(ev);
+            return true;
+        }
+        return onScrollTouchEvent(ev);
+    }
+
+    private boolean interceptExpandDrag(MotionEvent ev) {
+        if (!mDragToExpandEnabled) {
+            return false;
+        }
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mIsDraggingExpand = false;
+                mDownOnMainButton = isOnMainButton(ev.getX(), ev.getY());
+                if (mDownOnMainButton) {
+                    mDragDownX = ev.getX();
+                    mDragDownY = ev.getY();
+                    if (mVelocityTracker == null) {
+                        mVelocityTracker = VelocityTracker.obtain();
+                    }
+                    mVelocityTracker.clear();
+                    mVelocityTracker.addMovement(ev);
+                }
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (mDownOnMainButton && !mIsDraggingExpand) {
+                    mVelocityTracker.addMovement(ev);
+                    final float dx = ev.getX() - mDragDownX;
+                    final float dy = ev.getY() - mDragDownY;
+                    if (Math.abs(dy) > mTouchSlop && Math.abs(dy) > Math.abs(dx)) {
+                        startExpandDrag(ev.getY());
+                    }
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mDownOnMainButton = false;
+                break;
+        }
+        return mIsDraggingExpand;
+    }
+
+    private void startExpandDrag(float y) {
+        // the main button gets a cancel instead of a click
+        mIsDraggingExpand = true;
+        mMenuAnimator.cancel();
+        materializeItems();
+        mDragDownY = y;
+        mDragStartProgress = mExpandProgress;
+        getParent().requestDisallowInterceptTouchEvent(true);
+    }
+
+    private void onExpandDragTouchEvent(MotionEvent ev) {
+        mVelocityTracker.addMovement(ev);
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_MOVE: {
+                float progress = mDragStartProgress + (mDragDownY - ev.getY()) / getDragDistance();
+                applyExpandProgress(Math.max(0f, Math.min(1f, progress)));
+                break;
+            }
+            case MotionEvent.ACTION_UP:
+                mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+                settleExpandDrag(-mVelocityTracker.getYVelocity());
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                settleExpandDrag(0f);
+                break;
+        }
+    }
+
+    /**
+     * Finishes a drag in the direction of a fling, or towards the nearer end. A fling finishes
+     * at least as fast as it moved.
+     */
+    private void settleExpandDrag(float velocity) {
+        mIsDraggingExpand = false;
+        mDownOnMainButton = false;
+        if (Math.abs(velocity) > mMinFlingVelocity) {
+            mIsExpanded = velocity > 0;
+        } else {
+            mIsExpanded = mExpandProgress >= 0.5f;
+        }
+        long maxDuration = Long.MAX_VALUE;
+        if (Math.abs(velocity) > mMinFlingVelocity) {
+            float remaining = Math.abs((mIsExpanded ? 1f : 0f) - mExpandProgress) * getDragDistance();
+            maxDuration = (long) (remaining / Math.abs(velocity) * 1000);
+        }
+        startMenuAnimation(maxDuration);
+    }
+
+    private float getDragDistance() {
+        return Math.max(mMainButtonSize, mGeometry.getExpandDistance());
+    }
+
+    boolean interceptScroll(MotionEvent ev) {
+        if (!mIsExpanded || mGeometry.getMaxScrollOffset() == 0) {
+            return false;
+        }
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mLastTouchY = ev.getY();
+                mIsScrolling = false;
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (Math.abs(ev.getY() - mLastTouchY) > mTouchSlop) {
+                    mLastTouchY = ev.getY();
+                    mIsScrolling = true;
+                    getItemHost().getParent().requestDisallowInterceptTouchEvent(true);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mIsScrolling = false;
+                break;
+        }
+        return mIsScrolling;
+    }
+
+    boolean onScrollTouchEvent(MotionEvent ev) {
+        if (!mIsExpanded || mGeometry.getMaxScrollOffset() == 0) {
+            return false;
+        }
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mLastTouchY = ev.getY();
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (!mIsScrolling && Math.abs(ev.getY() - mLastTouchY) > mTouchSlop) {
+                    mIsScrolling = true;
+                    mLastTouchY = ev.getY();
+                    getItemHost().getParent().requestDisallowInterceptTouchEvent(true);
+                }
+                if (mIsScrolling) {
+                    int dy = (int) (ev.getY() - mLastTouchY);
+                    mLastTouchY += dy;
+                    scrollMenuBy(dy);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mIsScrolling = false;
+                break;
+        }
+        return true;
     }
 
     private View.OnClickListener mMainButtonOnClickListener = new View.OnClickListener() {
         @Override
         public void onClick(View view) {
-            float from = 0f, to = 45f;
-            if(mIsExpanded) {
-                from = 45f;
-                to = 0f;
+            setExpand(!mIsExpanded);
+        }
+    };
+
+    private View.OnClickListener mMenuItemOnClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            CirclePopMenuItem item = (CirclePopMenuItem) view;
+            if (mOnMenuItemClickListener != null) {
+                mOnMenuItemClickListener.onMenuItemClick(CirclePopMenu.this, item.getPosition(), item.getItemId());
+            }
+        }
+    };
+
+    private ViewGroup getItemHost() {
+        return isPanelAttached() ? mItemPanel : this;
+    }
+
+    private ViewTreeObserver.OnPreDrawListener mPanelPositionListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            syncPanelPosition();
+            return true;
+        }
+    };
+
+    private MessageQueue.IdleHandler mPrewarmIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (getMeasuredHeight() == 0) {
+                // wait for the first layout pass, it tells which positions are visible
+                return true;
+            }
+            prewarmItems();
+            return false;
+        }
+    };
+
+    private DataSetObserver mDataSetObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            onDataSetChanged();
+        }
+
+        @Override
+        public void onInvalidated() {
+            onDataSetChanged();
+        }
+    };
+
+    private ValueAnimator.AnimatorUpdateListener mMenuAnimatorUpdateListener = new ValueAnimator.AnimatorUpdateListener() {
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+            // use the fraction instead of the animated value to avoid boxing on every frame
+            float fraction = animation.getAnimatedFraction();
+            applyExpandProgress(mAnimFromProgress + (mAnimToProgress - mAnimFromProgress) * fraction);
+            if (mMetrics != null) {
+                mMetrics.onAnimationUpdate();
+            }
+        }
+    };
+
+    private Animator.AnimatorListener mMenuAnimatorListener = new AnimatorListenerAdapter() {
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            if (!mIsExpanded && mExpandProgress == 0f) {
+                releaseItems();
+            }
+            // also called for animations cut short by the opposite one
+            final MenuMetrics metrics = mMetrics;
+            if (metrics != null) {
+                metrics.endAnimation();
+                mOnMetricsListener.onMenuAnimationMetrics(CirclePopMenu.this, metrics);
             }
-            mIsExpanded = !mIsExpanded;
-            ObjectAnimator rotateAnimator = ObjectAnimator.ofFloat(mMainButton, "rotation", from, to);
-            rotateAnimator.setDuration(200);
-            rotateAnimator.start();
-            startMenuAnimation();
         }
     };
 
-    private void startMenuAnimation() {
-        float fromAlpha = mIsExpanded ? 0: 1;
-        float toAlpha = mIsExpanded ? 1 : 0;
-        float unExpandTop = getMeasuredHeight() - getPaddingBottom() - (mMainButtonSize + mMenuButtonSize)/2;
-        float firstExpandTop = getHeight() - getPaddingBottom() - mMainButtonSize - mMenuButtonSpacing - mMenuButtonSize;
-        for(int i = mMenuItems.size()-1; i >= 0; i--) {
-            float fromY = mMenuItems.get(i).getTop();
-            float toY = mIsExpanded ? firstExpandTop : unExpandTop;
-            firstExpandTop -= (mMenuButtonSize + mMenuButtonSpacing);
-
-            AnimatorSet as = new AnimatorSet();
-            as.playTogether(ObjectAnimator.ofFloat(mMenuItems.get(i), "translationY", toY-fromY),
-                    ObjectAnimator.ofFloat(mMenuItems.get(i), "alpha", fromAlpha, toAlpha));
-            as.setDuration(100 + (mMenuItems.size()-i)*20);
-            as.setInterpolator(new DecelerateInterpolator());
-            as.start();
+    private ValueAnimator.AnimatorUpdateListener mChangeAnimatorUpdateListener = new ValueAnimator.AnimatorUpdateListener() {
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+            applyChange(animation.getAnimatedFraction());
+        }
+    };
+
+    private Animator.AnimatorListener mChangeAnimatorListener = new AnimatorListenerAdapter() {
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            endChangeAnimation();
+        }
+    };
+
+    private void computeMenuAnimationTargets() {
+        final int size = mMenuItems.size();
+        if (mItemHeights.length < size) {
+            mItemHeights = new int[Math.max(size, mItemHeights.length * 2)];
+        }
+        for (int i = 0; i < size; i++) {
+            mItemHeights[i] = mMenuItems.get(i).getMeasuredHeight();
+        }
+        // items off screen both collapsed and expanded are not animated
+        ViewGroup host = getItemHost();
+        if (host.getWindowToken() != null && host.getLocalVisibleRect(mTempRect)) {
+            mGeometry.setVisibleBounds(mTempRect.left, mTempRect.top, mTempRect.right, mTempRect.bottom);
+        } else {
+            mGeometry.clearVisibleBounds();
+        }
+        mGeometry.computeTargets(mFirstPosition, size, mItemHeights, mScrollOffset);
+        updateHitRegions();
+    }
+
+    /**
+     * Puts circles on the buttons and rounded rectangles on the labels of the items, where
+     * they rest fully expanded.
+     */
+    private void updateHitRegions() {
+        mHitRegions.clear();
+        for (int i = 0; i < mGeometry.getItemCount(); i++) {
+            CirclePopMenuItem item = mMenuItems.get(i);
+            final float left = item.getLeft() + mGeometry.getExpandedTranslationX(i);
+            final float top = item.getTop() + mGeometry.getExpandedTranslationY(i);
+            item.getButtonBounds(mTempRect);
+            mHitRegions.addCircle(i, left + mTempRect.exactCenterX(), top + mTempRect.exactCenterY(),
+                    mTempRect.width() / 2f);
+            if (item.getLabelBounds(mTempRect)) {
+                mHitRegions.addRoundRect(i, left + mTempRect.left, top + mTempRect.top,
+                        left + mTempRect.right, top + mTempRect.bottom, DrawableRegistry.LABEL_CORNER_RADIUS);
+            }
+        }
+    }
+
+    private void applyExpandProgress(float progress) {
+        mExpandProgress = progress;
+        mMainButton.setIconProgress(progress);
+        mGeometry.computeFrame(progress);
+        for(int i = mGeometry.getItemCount()-1; i >= 0; i--) {
+            View item = mMenuItems.get(i);
+            item.setTranslationX(mGeometry.getFrameTranslationX(i));
+            item.setTranslationY(mGeometry.getFrameTranslationY(i));
+            item.setAlpha(mGeometry.getFrameAlpha(i));
+        }
+    }
+
+    /**
+     * Moves the items of a committed update from where they were to their new slots. Only a
+     * fully expanded menu animates, otherwise the items land on their slots right away.
+     */
+    private void startChangeAnimation() {
+        mChangeAnimationPending = false;
+        if (mExpandProgress < 1f || mMenuAnimator.isRunning()) {
+            endChangeAnimation();
+            return;
+        }
+        applyChange(0f);
+        mChangeAnimator.start();
+    }
+
+    private void finishChangeAnimation() {
+        mChangeAnimationPending = false;
+        if (mChangeAnimator.isStarted()) {
+            mChangeAnimator.end();
+        } else {
+            endChangeAnimation();
+        }
+    }
+
+    /**
+     * Blends the items from their recorded start to the transforms of the current frame.
+     */
+    private void applyChange(float t) {
+        for (int i = mGeometry.getItemCount() - 1; i >= 0; i--) {
+            View item = mMenuItems.get(i);
+            final float toX = mGeometry.getFrameTranslationX(i);
+            final float toY = mGeometry.getFrameTranslationY(i);
+            final float fromX = Float.isNaN(mChangeFromX[i]) ? toX : mChangeFromX[i] - item.getLeft();
+            final float fromY = Float.isNaN(mChangeFromY[i]) ? toY : mChangeFromY[i] - item.getTop();
+            item.setTranslationX(fromX + (toX - fromX) * t);
+            item.setTranslationY(fromY + (toY - fromY) * t);
+            item.setAlpha(mChangeFromAlpha[i] + (mGeometry.getFrameAlpha(i) - mChangeFromAlpha[i]) * t);
         }
+        for (int i = mRemovedItems.size() - 1; i >= 0; i--) {
+            mRemovedItems.get(i).setAlpha(mRemovedFromAlpha[i] * (1f - t));
+        }
+    }
+
+    private void endChangeAnimation() {
+        for (int i = mRemovedItems.size() - 1; i >= 0; i--) {
+            detachItem(mRemovedItems.remove(i));
+        }
+    }
+
+    private void startMenuAnimation(long maxDuration) {
+        // a running animation is reversed from wherever it currently is
+        mMenuAnimator.cancel();
+        finishChangeAnimation();
+        mAnimFromProgress = mExpandProgress;
+        mAnimToProgress = mIsExpanded ? 1f : 0f;
+        float distance = Math.abs(mAnimToProgress - mAnimFromProgress);
+        if (distance == 0) {
+            if (!mIsExpanded) {
+                releaseItems();
+            }
+            return;
+        }
+        // the visible part may have changed since the last layout pass
+        computeMenuAnimationTargets();
+        mMenuAnimator.setDuration(Math.min(maxDuration, (long) (mGeometry.getAnimationDuration() * distance)));
+        if (mMetrics != null) {
+            mMetrics.beginAnimation(mIsExpanded);
+        }
+        mMenuAnimator.start();
+    }
+
+    public interface OnMenuItemClickListener {
+        void onMenuItemClick(CirclePopMenu menu, int position, long id);
+    }
+
+    public interface OnMetricsListener {
+        /**
+         * Called when an expand or collapse animation ended. The metrics object is reused,
+         * copy what should be kept.
+         */
+        void onMenuAnimationMetrics(CirclePopMenu menu, MenuMetrics metrics);
+    }
+
+    /**
+     * Supplies the menu content. Position 0 is shown next to the main button, and only
+     * items of visible positions are bound, reusing the views of recycled ones.
+     */
+    public static abstract class Adapter {
+        private final DataSetObservable mDataSetObservable = new DataSetObservable();
+
+        public abstract int getCount();
+
+        public long getItemId(int position) {
+            return position;
+        }
+
+        /**
+         * Sets label and icon of a new or recycled item for the position.
+         */
+        public abstract void onBindMenuItem(CirclePopMenuItem item, int position);
+
+        public void notifyDataSetChanged() {
+            mDataSetObservable.notifyChanged();
+        }
+
+        void registerDataSetObserver(DataSetObserver observer) {
+            mDataSetObservable.registerObserver(observer);
+        }
+
+        void unregisterDataSetObserver(DataSetObserver observer) {
+            mDataSetObservable.unregisterObserver(observer);
+        }
+    }
+
+    /**
+     * Binds the items of a menu resource.
+     */
+    private static final class ResourceAdapter extends Adapter {
+        private final MenuResource mMenu;
+
+        ResourceAdapter(MenuResource menu) {
+            mMenu = menu;
+        }
+
+        @Override
+        public int getCount() {
+            return mMenu.size();
+        }
+
+        @Override
+        public long getItemId(int position) {
+            final int id = mMenu.getItemId(position);
+            return id != View.NO_ID ? id : position;
+        }
+
+        @Override
+        public void onBindMenuItem(CirclePopMenuItem item, int position) {
+            item.setLabel(mMenu.getTitle(position));
+            item.setIcon(mMenu.newIcon(item.getContext(), position));
+        }
+    }
+
+    /**
+     * Where the touches of a host go until the gesture ends.
+     */
+    static final class TouchState {
+        View target;
+        boolean intercepted;
+        // set by the target through requestDisallowInterceptTouchEvent until the gesture ends
+        boolean disallowIntercept;
+    }
+
+    static class SavedState extends BaseSavedState {
+        boolean expanded;
+        int scrollOffset;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            expanded = in.readInt() != 0;
+            scrollOffset = in.readInt();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(expanded ? 1 : 0);
+            out.writeInt(scrollOffset);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
     }
 
     private static void D(String msg) {
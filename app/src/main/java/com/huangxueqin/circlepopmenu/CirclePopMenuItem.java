@@ -1,39 +1,62 @@
 package com.huangxueqin.circlepopmenu;
 
 import android.content.Context;
-import android.graphics.Color;
-import android.graphics.RectF;
+import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
-import android.graphics.drawable.ShapeDrawable;
-import android.graphics.drawable.StateListDrawable;
-import android.graphics.drawable.shapes.RoundRectShape;
-import android.os.Build;
+import android.os.Bundle;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.support.v4.widget.ExploreByTouchHelper;
+import android.text.Layout;
 import android.text.TextUtils;
 import android.util.Log;
-import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.ViewGroup;
-import android.widget.TextView;
+import android.view.accessibility.AccessibilityEvent;
+
+import java.util.List;
 
 /**
  * Created by huangxueqin on 16/9/12.
  */
 public class CirclePopMenuItem extends ViewGroup {
-    private static final int MENU_LABEL_SPACING = 10;
-    private static final int MENU_LABEL_PADDING = 10;
-    private static final float[] MENU_LABEL_CONOR_RADIUS = {10, 10, 10, 10, 10, 10, 10, 10};
-    private static final int MENU_LABEL_TEXT_COLOR = 0xff666666;
-    private static final int MENU_LABEL_BACKGROUND = 0x80ffffff;
-    private static final int MENU_BUTTON_SIZE = 50;
-    private static final int MENU_LABEL_TEXT_SIZE = 13;
-
+    // the menu's style, sizes may still be changed per item
+    private MenuStyle mStyle;
     private int mButtonSize;
     private int mLabelTextSize;
     private int mButtonLabelSpacing;
+    private int mLabelPadding;
     private CircleButton mIcon;
-    private TextView mLabel;
+    private MenuLabel mLabel;
     private CirclePopMenu.MenuLabelPosition mLabelPosition = CirclePopMenu.MenuLabelPosition.RIGHT;
 
+    // adapter binding, set by CirclePopMenu
+    private int mPosition = -1;
+    private long mItemId = -1;
+
+    // flat mode draws button and label itself instead of hosting child views
+    private final boolean mFlat;
+    private CircleRenderer mFlatButton;
+    private CharSequence mFlatLabelText;
+    private Layout mFlatLabelLayout;
+    private Drawable mFlatLabelBackground;
+    private Rect mFlatButtonRect = new Rect();
+    private Rect mFlatLabelRect = new Rect();
+    private FlatAccessibilityHelper mFlatAccessibilityHelper;
+    private IconLoader.Target mFlatIconTarget;
+
+    // measure result of the last pass, reused while nothing affecting it changed
+    private boolean mMeasureDirty = true;
+    private boolean mLayoutDirty = true;
+    private int mCachedWidthSpec;
+    private int mCachedHeightSpec;
+    private int mCachedWidth;
+    private int mCachedHeight;
+
+    // set by the owning menu while its metrics are collected
+    private MenuMetrics mMetrics;
+
     public CirclePopMenuItem(Context context) {
         this(context, null);
     }
@@ -43,73 +66,350 @@ public class CirclePopMenuItem extends ViewGroup {
     }
 
     public CirclePopMenuItem(Context context, String label, Drawable icon) {
+        this(context, label, icon, false);
+    }
+
+    /**
+     * @param flat draw button and label from this single view instead of a child
+     *             {@link CircleButton} and label view
+     */
+    public CirclePopMenuItem(Context context, boolean flat) {
+        this(context, null, null, flat);
+    }
+
+    public CirclePopMenuItem(Context context, String label, Drawable icon, boolean flat) {
+        this(context, MenuStyle.getDefault(context), label, icon, flat);
+    }
+
+    /**
+     * Item built from the style alone, without any resource lookup.
+     */
+    public CirclePopMenuItem(Context context, MenuStyle style, boolean flat) {
+        this(context, style, null, null, flat);
+    }
+
+    private CirclePopMenuItem(Context context, MenuStyle style, String label, Drawable icon, boolean flat) {
         super(context);
-        if(!TextUtils.isEmpty(label)) {
-            mLabel = createLabel(context, label);
-            addView(mLabel);
+        mFlat = flat;
+        mStyle = style;
+        mButtonLabelSpacing = style.getLabelSpacing();
+        mLabelPadding = style.getLabelPadding();
+        mButtonSize = style.getMenuButtonSize();
+        mLabelTextSize = style.getLabelTextSize();
+
+        if (mFlat) {
+            initFlat(context);
+            setLabel(label);
+            setIcon(icon);
+        } else {
+            if(!TextUtils.isEmpty(label)) {
+                mLabel = createLabel(context, label);
+                addView(mLabel);
+            }
+            mIcon = new CircleButton(context, style, style.newMenuButtonBackground(getResources()));
+            if (icon != null) {
+                mIcon.setIconDrawable(icon);
+            }
+            addView(mIcon);
         }
-        mIcon = new CircleButton(context);
-        mIcon.setIconResource(R.drawable.copy);
-        addView(mIcon);
 
         setClickable(true);
+    }
 
-        mButtonLabelSpacing = (int) (getResources().getDisplayMetrics().density * MENU_LABEL_SPACING + 0.5);
-        mButtonSize = (int) (getResources().getDisplayMetrics().density * MENU_BUTTON_SIZE + 0.5);
-        mLabelTextSize = (int) (getResources().getDisplayMetrics().scaledDensity * MENU_LABEL_TEXT_SIZE + 0.5);
+    private void initFlat(Context context) {
+        mFlatButton = new CircleRenderer(mStyle.getDensity(), mStyle.newMenuButtonBackground(getResources()));
+        mFlatLabelBackground = mStyle.newLabelBackground(getResources());
+        mFlatLabelBackground.setState(getDrawableState());
+        mFlatIconTarget = new IconLoader.Target() {
+            @Override
+            public void onIconLoaded(Drawable icon) {
+                mFlatButton.setIconDrawable(icon);
+                invalidate();
+            }
+        };
+        mFlatAccessibilityHelper = new FlatAccessibilityHelper();
+        ViewCompat.setAccessibilityDelegate(this, mFlatAccessibilityHelper);
+        setWillNotDraw(false);
     }
 
-    private TextView createLabel(Context context, String labelText) {
-        TextView label = new TextView(context);
+    public boolean isFlat() {
+        return mFlat;
+    }
+
+    private MenuLabel createLabel(Context context, CharSequence labelText) {
+        MenuLabel label = new MenuLabel(context);
         label.setText(labelText);
-        label.setTextColor(MENU_LABEL_TEXT_COLOR);
-        label.setPadding(MENU_LABEL_PADDING, MENU_LABEL_PADDING, MENU_LABEL_PADDING, MENU_LABEL_PADDING);
-        label.setGravity(Gravity.CENTER_VERTICAL | Gravity.CENTER_HORIZONTAL);
-        label.setClickable(true);
-        label.setFocusableInTouchMode(true);
-        Drawable labelBG = createLabelDrawableBG(MENU_LABEL_BACKGROUND);
-        if(Build.VERSION.SDK_INT > 15) {
-            label.setBackground(labelBG);
+        applyLabelStyle(label);
+        return label;
+    }
+
+    private void applyLabelStyle(MenuLabel label) {
+        label.setTextColor(mStyle.getLabelTextColor());
+        label.setTypeface(mStyle.getLabelTypeface());
+        label.setTextSize(mLabelTextSize);
+        label.setPadding(mLabelPadding, mLabelPadding, mLabelPadding, mLabelPadding);
+        label.setLabelBackground(mStyle.newLabelBackground(getResources()));
+    }
+
+    /**
+     * Restyles an item a shared pool hands to a menu of another style.
+     */
+    void setStyle(MenuStyle style) {
+        if (mStyle == style) {
+            return;
         }
-        else {
-            label.setBackgroundDrawable(labelBG);
+        mStyle = style;
+        mButtonLabelSpacing = style.getLabelSpacing();
+        mLabelPadding = style.getLabelPadding();
+        mButtonSize = style.getMenuButtonSize();
+        mLabelTextSize = style.getLabelTextSize();
+        if (mFlat) {
+            mFlatButton.setCircleDrawable(style.newMenuButtonBackground(getResources()));
+            mFlatButton.setState(getDrawableState());
+            mFlatLabelBackground = style.newLabelBackground(getResources());
+            mFlatLabelBackground.setState(getDrawableState());
+            mFlatLabelLayout = null;
+        } else {
+            mIcon.setCircleDrawable(style.newMenuButtonBackground(getResources()));
+            if (mLabel != null) {
+                applyLabelStyle(mLabel);
+            }
+        }
+        mMeasureDirty = true;
+        requestLayout();
+        invalidate();
+    }
+
+    public void setLabel(CharSequence labelText) {
+        if (mFlat) {
+            if (TextUtils.isEmpty(labelText)) {
+                labelText = null;
+            }
+            if (TextUtils.equals(labelText, mFlatLabelText)) {
+                return;
+            }
+            mFlatLabelText = labelText;
+            mFlatLabelLayout = null;
+            mMeasureDirty = true;
+            requestLayout();
+            invalidate();
+            return;
+        }
+
+        if (TextUtils.isEmpty(labelText)) {
+            if (mLabel == null) {
+                return;
+            }
+            removeView(mLabel);
+            mLabel = null;
+        } else if (mLabel == null) {
+            mLabel = createLabel(getContext(), labelText);
+            addView(mLabel);
+        } else if (!TextUtils.equals(labelText, mLabel.getText())) {
+            mLabel.setText(labelText);
+        } else {
+            return;
+        }
+        mMeasureDirty = true;
+    }
+
+    public CharSequence getLabel() {
+        if (mFlat) {
+            return mFlatLabelText;
+        }
+        return mLabel != null ? mLabel.getText() : null;
+    }
+
+    public void setIcon(Drawable icon) {
+        if (mFlat) {
+            IconLoader.cancel(mFlatIconTarget);
+            mFlatButton.setIconDrawable(icon);
+            invalidate();
+        } else {
+            mIcon.setIconDrawable(icon);
+        }
+    }
+
+    public void setIconResource(int resId) {
+        if (mFlat) {
+            setIcon(DrawableRegistry.getDrawable(getContext(), resId));
+        } else {
+            mIcon.setIconResource(resId);
+        }
+    }
+
+    /**
+     * Decodes the icon in the background at the size of the menu button, showing the
+     * placeholder meanwhile. Rebinding the item or detaching it cancels the load.
+     */
+    public void loadIcon(IconLoader.Source source, Drawable placeholder) {
+        final int targetSize = (mButtonSize - CircleRenderer.SHADOW_WIDTH_PX*2) / 2;
+        if (mFlat) {
+            setIcon(placeholder);
+            IconLoader.load(getContext(), source, targetSize, mFlatIconTarget);
+        } else {
+            mIcon.loadIcon(source, placeholder, targetSize);
         }
-        return label;
+    }
+
+    public void setIconResourceAsync(int resId) {
+        loadIcon(IconLoader.fromResource(resId), null);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mFlat) {
+            IconLoader.cancel(mFlatIconTarget);
+        }
+    }
+
+    public int getPosition() {
+        return mPosition;
+    }
+
+    public long getItemId() {
+        return mItemId;
+    }
+
+    void bind(int position, long itemId) {
+        mPosition = position;
+        mItemId = itemId;
     }
 
     public void setMenuButtonSize(int buttonSize) {
-        mButtonSize = buttonSize;
-        requestLayout();
+        if(buttonSize != mButtonSize) {
+            mButtonSize = buttonSize;
+            mMeasureDirty = true;
+            requestLayout();
+        }
     }
 
     public void setMenuLabelTextSize(int textSize) {
-        mLabelTextSize = textSize;
-        requestLayout();
+        if(textSize != mLabelTextSize) {
+            mLabelTextSize = textSize;
+            if(mLabel != null) {
+                mLabel.setTextSize(textSize);
+            }
+            mMeasureDirty = true;
+            requestLayout();
+        }
     }
 
     public void setMenuLabelPosition(CirclePopMenu.MenuLabelPosition pos) {
         if(pos != mLabelPosition) {
             mLabelPosition = pos;
+            mLayoutDirty = true;
             requestLayout();
         }
     }
 
+    @Override
+    public void setPadding(int left, int top, int right, int bottom) {
+        mMeasureDirty = true;
+        super.setPadding(left, top, right, bottom);
+    }
+
     @Override
     public void setPressed(boolean pressed) {
         super.setPressed(pressed);
+        if (mFlat) {
+            // handled by drawableStateChanged
+            return;
+        }
         if(mLabel != null) {
             mLabel.setPressed(pressed);
         }
         mIcon.setPressed(pressed);
     }
 
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+        if (mFlat) {
+            final int[] state = getDrawableState();
+            boolean changed = mFlatButton.setState(state);
+            changed |= mFlatLabelBackground.isStateful() && mFlatLabelBackground.setState(state);
+            if (changed) {
+                invalidate();
+            }
+        }
+    }
+
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        if (mFlatAccessibilityHelper != null && mFlatAccessibilityHelper.dispatchHoverEvent(event)) {
+            return true;
+        }
+        return super.dispatchHoverEvent(event);
+    }
+
     @Override
     public boolean onInterceptTouchEvent(MotionEvent ev) {
+        // button and label press and click together, the menu only routes touches on them here
+        return true;
+    }
+
+    /**
+     * Bounds of the circle button in item coordinates.
+     */
+    void getButtonBounds(Rect out) {
+        if (mFlat) {
+            out.set(mFlatButtonRect);
+        } else {
+            out.set(mIcon.getLeft(), mIcon.getTop(), mIcon.getRight(), mIcon.getBottom());
+        }
+    }
+
+    /**
+     * Bounds of the label background in item coordinates, false if the item has no label.
+     */
+    boolean getLabelBounds(Rect out) {
+        if (mFlat) {
+            out.set(mFlatLabelRect);
+            return mFlatLabelLayout != null;
+        }
+        if (mLabel == null) {
+            return false;
+        }
+        out.set(mLabel.getLeft(), mLabel.getTop(), mLabel.getRight(), mLabel.getBottom());
         return true;
     }
 
+    void setMetrics(MenuMetrics metrics) {
+        mMetrics = metrics;
+        if (mIcon != null) {
+            mIcon.setMetrics(metrics);
+        }
+        // draw() is skipped for views which do not draw themselves, so it could not be timed
+        setWillNotDraw(!mFlat && metrics == null);
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final MenuMetrics metrics = mMetrics;
+        if (metrics == null) {
+            measureItem(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+        final long start = System.nanoTime();
+        measureItem(widthMeasureSpec, heightMeasureSpec);
+        metrics.record(MenuMetrics.VIEW_ITEM, MenuMetrics.PASS_MEASURE, start);
+    }
+
+    private void measureItem(int widthMeasureSpec, int heightMeasureSpec) {
+        if(!mMeasureDirty
+                && isCompatibleSpec(widthMeasureSpec, mCachedWidthSpec, mCachedWidth)
+                && isCompatibleSpec(heightMeasureSpec, mCachedHeightSpec, mCachedHeight)) {
+            setMeasuredDimension(mCachedWidth, mCachedHeight);
+            return;
+        }
+
+        if (mFlat) {
+            measureFlat(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+
         int width = MeasureSpec.getSize(widthMeasureSpec);
         int height = MeasureSpec.getSize(heightMeasureSpec);
         int horiPadding = getPaddingLeft() + getPaddingRight();
@@ -131,10 +431,72 @@ public class CirclePopMenuItem extends ViewGroup {
         }
         setMeasuredDimension(horiPadding + mButtonSize + mButtonLabelSpacing + labelWidth,
                 vertPadding + Math.max(mButtonSize, labelHeight));
+        cacheMeasurement(widthMeasureSpec, heightMeasureSpec);
+    }
+
+    private void measureFlat(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int horiPadding = getPaddingLeft() + getPaddingRight();
+        int vertPadding = getPaddingBottom() + getPaddingTop();
+
+        int labelWidth = 0;
+        int labelHeight = 0;
+        if (mFlatLabelText != null) {
+            int maxTextWidth = width - horiPadding - mButtonSize - mButtonLabelSpacing - 2*mLabelPadding;
+            mFlatLabelLayout = LabelLayoutCache.get(mFlatLabelText, mLabelTextSize, mStyle.getLabelTypeface(),
+                    mStyle.getLabelTextColor(), maxTextWidth);
+            labelWidth = mFlatLabelLayout.getWidth() + 2*mLabelPadding;
+            labelHeight = mFlatLabelLayout.getHeight() + 2*mLabelPadding;
+        }
+        setMeasuredDimension(horiPadding + mButtonSize + mButtonLabelSpacing + labelWidth,
+                vertPadding + Math.max(mButtonSize, labelHeight));
+        cacheMeasurement(widthMeasureSpec, heightMeasureSpec);
+    }
+
+    private void cacheMeasurement(int widthMeasureSpec, int heightMeasureSpec) {
+        mMeasureDirty = false;
+        mLayoutDirty = true;
+        mCachedWidthSpec = widthMeasureSpec;
+        mCachedHeightSpec = heightMeasureSpec;
+        mCachedWidth = getMeasuredWidth();
+        mCachedHeight = getMeasuredHeight();
+    }
+
+    /**
+     * An AT_MOST bound which did not constrain the cached size and still fits it gives the same result.
+     */
+    private static boolean isCompatibleSpec(int spec, int cachedSpec, int cachedSize) {
+        if(spec == cachedSpec) {
+            return true;
+        }
+        return MeasureSpec.getMode(spec) == MeasureSpec.AT_MOST
+                && MeasureSpec.getMode(cachedSpec) == MeasureSpec.AT_MOST
+                && MeasureSpec.getSize(cachedSpec) > cachedSize
+                && MeasureSpec.getSize(spec) >= cachedSize;
     }
 
     @Override
-    protected void onLayout(boolean b, int i, int i1, int i2, int i3) {
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        final MenuMetrics metrics = mMetrics;
+        if (metrics == null) {
+            layoutItem(changed);
+            return;
+        }
+        final long start = System.nanoTime();
+        layoutItem(changed);
+        metrics.record(MenuMetrics.VIEW_ITEM, MenuMetrics.PASS_LAYOUT, start);
+    }
+
+    private void layoutItem(boolean changed) {
+        if(!changed && !mLayoutDirty) {
+            return;
+        }
+        mLayoutDirty = false;
+        if (mFlat) {
+            layoutFlat();
+            return;
+        }
+
         int left = getPaddingLeft();
         int width = getMeasuredWidth();
         int height = getMeasuredHeight();
@@ -157,31 +519,111 @@ public class CirclePopMenuItem extends ViewGroup {
         }
     }
 
-    private Drawable createLabelDrawableBG(int color) {
-        int darkColor = darker(color, 0.7f);
-        StateListDrawable d = new StateListDrawable();
-        // normal state drawable
-        ShapeDrawable normal = new ShapeDrawable(new RoundRectShape(MENU_LABEL_CONOR_RADIUS, new RectF(0, 0, 0, 0), new float[8]));
-        normal.getPaint().setColor(color);
-        d.addState(new int[]{-android.R.attr.state_pressed}, normal);
-        // dark state drawable
-        ShapeDrawable pressed = new ShapeDrawable(new RoundRectShape(MENU_LABEL_CONOR_RADIUS, new RectF(0, 0, 0, 0), new float[8]));
-        pressed.getPaint().setColor(darkColor);
-        d.addState(new int[]{android.R.attr.state_pressed}, pressed);
+    private void layoutFlat() {
+        // same placement rules as the child views in onLayout
+        int left = getPaddingLeft();
+        int height = getMeasuredHeight();
+        int labelWidth = mFlatLabelLayout != null ? mFlatLabelLayout.getWidth() + 2*mLabelPadding : 0;
+        int labelHeight = mFlatLabelLayout != null ? mFlatLabelLayout.getHeight() + 2*mLabelPadding : 0;
+
+        if(mLabelPosition == CirclePopMenu.MenuLabelPosition.RIGHT) {
+            mFlatButtonRect.set(left, (height-mButtonSize)/2, left+mButtonSize, (height+mButtonSize)/2);
+            left += mButtonLabelSpacing + mButtonSize;
+            mFlatLabelRect.set(left, (height-labelHeight)/2, left+labelWidth, (height+labelHeight)/2);
+        }
+        else if(mLabelPosition == CirclePopMenu.MenuLabelPosition.LEFT){
+            mFlatLabelRect.set(left, (height-labelHeight)/2, left+labelWidth, (height+labelHeight)/2);
+            left += labelWidth + mButtonLabelSpacing;
+            mFlatButtonRect.set(left, (height-mButtonSize)/2, left+mButtonSize, (height+mButtonSize)/2);
+        }
+        mFlatButton.setSize(mButtonSize, mButtonSize, (mButtonSize - CircleRenderer.SHADOW_WIDTH_PX*2) / 2);
+    }
 
-        return d;
+    @Override
+    public void draw(Canvas canvas) {
+        final MenuMetrics metrics = mMetrics;
+        if (metrics == null) {
+            super.draw(canvas);
+            return;
+        }
+        final long start = System.nanoTime();
+        super.draw(canvas);
+        metrics.record(MenuMetrics.VIEW_ITEM, MenuMetrics.PASS_DRAW, start);
     }
 
-    private static int darker(int color, float factor) {
-        int a = Color.alpha(color);
-        int r = Color.red(color);
-        int g = Color.green(color);
-        int b = Color.blue(color);
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (!mFlat) {
+            return;
+        }
+        canvas.save();
+        canvas.translate(mFlatButtonRect.left, mFlatButtonRect.top);
+        mFlatButton.draw(canvas);
+        canvas.restore();
 
-        return Color.argb(a,
-                Math.max((int)(r*factor), 0),
-                Math.max((int)(g*factor), 0),
-                Math.max((int)(b*factor), 0));
+        if (mFlatLabelLayout != null) {
+            Drawable bg = mFlatLabelBackground.getCurrent();
+            if (bg != null) {
+                bg.setBounds(mFlatLabelRect);
+                bg.draw(canvas);
+            }
+            canvas.save();
+            canvas.translate(mFlatLabelRect.left + mLabelPadding, mFlatLabelRect.top + mLabelPadding);
+            mFlatLabelLayout.draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    /**
+     * Exposes a flat item as one virtual node, so it reads and clicks like the child views it replaces.
+     */
+    private class FlatAccessibilityHelper extends ExploreByTouchHelper {
+        private static final int VIRTUAL_ITEM_ID = 0;
+        private final Rect mTempBounds = new Rect();
+
+        FlatAccessibilityHelper() {
+            super(CirclePopMenuItem.this);
+        }
+
+        @Override
+        protected int getVirtualViewAt(float x, float y) {
+            if (mFlatButtonRect.contains((int) x, (int) y) || mFlatLabelRect.contains((int) x, (int) y)) {
+                return VIRTUAL_ITEM_ID;
+            }
+            return INVALID_ID;
+        }
+
+        @Override
+        protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+            virtualViewIds.add(VIRTUAL_ITEM_ID);
+        }
+
+        @Override
+        protected void onPopulateEventForVirtualView(int virtualViewId, AccessibilityEvent event) {
+            event.setContentDescription(mFlatLabelText);
+        }
+
+        @Override
+        protected void onPopulateNodeForVirtualView(int virtualViewId, AccessibilityNodeInfoCompat node) {
+            mTempBounds.set(mFlatButtonRect);
+            if (mFlatLabelLayout != null) {
+                mTempBounds.union(mFlatLabelRect);
+            }
+            node.setBoundsInParent(mTempBounds);
+            node.setContentDescription(mFlatLabelText);
+            node.setClickable(true);
+            node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+        }
+
+        @Override
+        protected boolean onPerformActionForVirtualView(int virtualViewId, int action, Bundle arguments) {
+            if (action == AccessibilityNodeInfoCompat.ACTION_CLICK) {
+                performClick();
+                sendEventForVirtualView(virtualViewId, AccessibilityEvent.TYPE_VIEW_CLICKED);
+                return true;
+            }
+            return false;
+        }
     }
 
     private static void D(String msg) {
@@ -0,0 +1,259 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Shader;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Draws the shadow, circle background and icon of a circle button into a
+ * {@code width x height} area starting at the canvas origin. Shared by
+ * {@link CircleButton} and the flat mode of {@link CirclePopMenuItem}.
+ */
+final class CircleRenderer {
+    static final int SHADOW_WIDTH_PX = 5;
+    private static final int SHADOW_COLOR = Color.argb(255/2, 0, 0, 0);
+    // image icons have no second state, they are turned by this at full progress
+    private static final float IMAGE_ICON_ROTATION = 45f;
+    // never changed, shared by all renderers
+    // shadow is pre-blurred by ShadowCache, no software layer needed
+    private static final Paint sShadowPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private static final Paint sIconBitmapPaint = new Paint();
+
+    private final float mDensity;
+
+    private int mWidth;
+    private int mHeight;
+    private int mRadius = -1;
+    private CircleButton.IconType mIconType = CircleButton.IconType.NONE;
+
+    private Drawable mIconDrawable;
+    private Drawable mCircleDrawable;
+    private Paint mCirclePaint;
+
+    // the plus is created on first use, custom icons are set from outside
+    private IconRenderer mPlusIcon;
+    private IconRenderer mCustomIcon;
+    private float mIconProgress = 0f;
+
+    private Bitmap mShadowBitmap;
+    private int mShadowRadius = -1;
+
+    private Path mCircleBackgroundPath = new Path();
+    // rasterized background per drawable state, only valid for the current size
+    private Map<Drawable, BitmapShader> mBackgroundShaders = new HashMap<>();
+
+    // image icon rasterized at its on-screen size, resolved again when icon or radius change
+    private Bitmap mIconBitmap;
+    private boolean mIconBitmapValid = false;
+
+    CircleRenderer(Resources res, Drawable circleDrawable) {
+        this(res.getDisplayMetrics().density, circleDrawable);
+    }
+
+    CircleRenderer(float density, Drawable circleDrawable) {
+        mDensity = density;
+        mCircleDrawable = circleDrawable;
+
+        mCirclePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mCirclePaint.setStyle(Paint.Style.FILL);
+    }
+
+    static Drawable getDefaultCircleDrawable(Context context) {
+        return DrawableRegistry.getDrawable(context, R.drawable.default_circle_button_bg);
+    }
+
+    void setCircleDrawable(Drawable circleDrawable) {
+        mCircleDrawable = circleDrawable;
+        mBackgroundShaders.clear();
+    }
+
+    void setIconDrawable(Drawable iconDrawable) {
+        mIconDrawable = iconDrawable;
+        mIconBitmapValid = false;
+        mIconType = iconDrawable == null ? CircleButton.IconType.NONE : CircleButton.IconType.IMAGE;
+    }
+
+    Drawable getIconDrawable() {
+        return mIconDrawable;
+    }
+
+    void setIconType(CircleButton.IconType type) {
+        mIconType = type;
+        if (type == CircleButton.IconType.PLUS && mPlusIcon == null) {
+            mPlusIcon = LineIconRenderer.plusToClose(Color.WHITE);
+            updateIconSize(mPlusIcon);
+        }
+    }
+
+    void setIconRenderer(IconRenderer icon) {
+        mCustomIcon = icon;
+        mIconType = icon == null ? CircleButton.IconType.NONE : CircleButton.IconType.CUSTOM;
+        updateIconSize(icon);
+    }
+
+    IconRenderer getIconRenderer() {
+        return mCustomIcon;
+    }
+
+    /**
+     * Returns true if the icon changed and needs to be redrawn.
+     */
+    boolean setIconProgress(float progress) {
+        if (mIconProgress == progress) {
+            return false;
+        }
+        mIconProgress = progress;
+        return mIconType != CircleButton.IconType.NONE;
+    }
+
+    float getIconProgress() {
+        return mIconProgress;
+    }
+
+    CircleButton.IconType getIconType() {
+        return mIconType;
+    }
+
+    int getRadius() {
+        return mRadius;
+    }
+
+    void setSize(int width, int height, int radius) {
+        if (width == mWidth && height == mHeight && radius == mRadius) {
+            return;
+        }
+        mWidth = width;
+        mHeight = height;
+        mRadius = radius;
+        mIconBitmapValid = false;
+        mCircleBackgroundPath.reset();
+        mCircleBackgroundPath.addCircle(width/2, height/2, radius, Path.Direction.CW);
+        mBackgroundShaders.clear();
+        updateIconSize(mPlusIcon);
+        updateIconSize(mCustomIcon);
+    }
+
+    private void updateIconSize(IconRenderer icon) {
+        if (icon != null && mRadius > 0) {
+            icon.onSizeChanged(mWidth / 2, mHeight / 2, mRadius, mDensity);
+        }
+    }
+
+    /**
+     * Returns true if the circle background changed and needs to be redrawn.
+     */
+    boolean setState(int[] state) {
+        Drawable d = mCircleDrawable;
+        return d != null && d.isStateful() && d.setState(state);
+    }
+
+    void draw(Canvas canvas) {
+        // draw shadow
+        final int cx = mWidth / 2;
+        final int cy = mHeight / 2;
+        if (mShadowRadius != mRadius) {
+            mShadowBitmap = ShadowCache.get(mRadius, SHADOW_WIDTH_PX, SHADOW_COLOR, mDensity);
+            mShadowRadius = mRadius;
+        }
+        if (mShadowBitmap != null) {
+            final int half = mShadowBitmap.getWidth() / 2;
+            canvas.drawBitmap(mShadowBitmap, cx - half, cy - half, sShadowPaint);
+        }
+
+        // draw circle background
+        drawCircleBackground(canvas, cx, cy);
+
+        if(mIconType == CircleButton.IconType.PLUS) {
+            mPlusIcon.draw(canvas, mIconProgress);
+        }
+        else if(mIconType == CircleButton.IconType.IMAGE && mIconDrawable != null) {
+            if (!mIconBitmapValid) {
+                mIconBitmap = getScaledIcon();
+                mIconBitmapValid = true;
+            }
+            if (mIconBitmap != null) {
+                final boolean rotated = mIconProgress != 0f;
+                if (rotated) {
+                    canvas.save();
+                    canvas.rotate(IMAGE_ICON_ROTATION * mIconProgress, cx, cy);
+                }
+                canvas.drawBitmap(mIconBitmap, cx - mIconBitmap.getWidth()/2,
+                        cy - mIconBitmap.getHeight()/2, sIconBitmapPaint);
+                if (rotated) {
+                    canvas.restore();
+                }
+            }
+        } else if (mIconType == CircleButton.IconType.CUSTOM && mCustomIcon != null) {
+            mCustomIcon.draw(canvas, mIconProgress);
+        }
+    }
+
+    /**
+     * Icons larger than the radius are scaled down to fit into it, keeping their aspect ratio.
+     */
+    private Bitmap getScaledIcon() {
+        int dh = mIconDrawable.getIntrinsicHeight();
+        int dw = mIconDrawable.getIntrinsicWidth();
+        if (dw <= 0 || dh <= 0) {
+            dw = dh = mRadius;
+        } else if(dh > mRadius || dw > mRadius) {
+            float scale = Math.min(1.0f*mRadius/dh, 1.0f*mRadius/dw);
+            dw = Math.max(1, (int) (dw * scale + 0.5f));
+            dh = Math.max(1, (int) (dh * scale + 0.5f));
+        }
+        return IconBitmapCache.get(mIconDrawable, dw, dh);
+    }
+
+    private void drawCircleBackground(Canvas canvas, int cx, int cy) {
+        Drawable d = mCircleDrawable.getCurrent();
+        if (d instanceof ColorDrawable) {
+            // solid colors need neither a bitmap nor a clip
+            mCirclePaint.setShader(null);
+            mCirclePaint.setColor(((ColorDrawable) d).getColor());
+            canvas.drawCircle(cx, cy, mRadius, mCirclePaint);
+            return;
+        }
+
+        BitmapShader shader = getBackgroundShader(d);
+        if (shader != null) {
+            mCirclePaint.setShader(shader);
+            mCirclePaint.setColor(Color.BLACK);
+            canvas.drawCircle(cx, cy, mRadius, mCirclePaint);
+        } else {
+            // fallback for drawables which can not be rasterized once
+            canvas.save();
+            canvas.clipPath(mCircleBackgroundPath);
+            d.setBounds(0, 0, mWidth, mHeight);
+            d.draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    private BitmapShader getBackgroundShader(Drawable d) {
+        BitmapShader shader = mBackgroundShaders.get(d);
+        if (shader != null) {
+            return shader;
+        }
+        if (mWidth <= 0 || mHeight <= 0 || d instanceof Animatable) {
+            return null;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        d.setBounds(0, 0, mWidth, mHeight);
+        d.draw(new Canvas(bitmap));
+        shader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        mBackgroundShaders.put(d, shader);
+        return shader;
+    }
+}
@@ -0,0 +1,108 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Color;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.ShapeDrawable;
+import android.graphics.drawable.StateListDrawable;
+import android.graphics.drawable.shapes.RoundRectShape;
+import android.os.Build;
+import android.util.SparseArray;
+
+/**
+ * Process wide registry of the drawables used by menus. Every resource and label
+ * background color is loaded or built once, and each caller gets a new drawable
+ * sharing its {@link Drawable.ConstantState}.
+ *
+ * <p>Shared drawables also share their children, so callers must set the bounds of
+ * {@link Drawable#getCurrent()} right before drawing it, and call {@link Drawable#mutate()}
+ * before changing any other per instance state like alpha or color filter.
+ * Only used on the ui thread.</p>
+ */
+final class DrawableRegistry {
+    static final float LABEL_CORNER_RADIUS = 10;
+    private static final float[] LABEL_CORNER_RADII = {
+            LABEL_CORNER_RADIUS, LABEL_CORNER_RADIUS, LABEL_CORNER_RADIUS, LABEL_CORNER_RADIUS,
+            LABEL_CORNER_RADIUS, LABEL_CORNER_RADIUS, LABEL_CORNER_RADIUS, LABEL_CORNER_RADIUS};
+
+    private static final SparseArray<Drawable.ConstantState> sResourceStates = new SparseArray<>();
+    private static final SparseArray<Drawable.ConstantState> sLabelBackgroundStates = new SparseArray<>();
+    private static int sDensityDpi;
+
+    private DrawableRegistry() {
+    }
+
+    static Drawable getDrawable(Context context, int resId) {
+        Resources res = context.getResources();
+        checkDensity(res);
+        Drawable.ConstantState state = sResourceStates.get(resId);
+        if (state == null) {
+            Drawable d;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                d = res.getDrawable(resId, context.getTheme());
+            } else {
+                d = res.getDrawable(resId);
+            }
+            state = d.getConstantState();
+            if (state == null) {
+                // not shareable, hand out as is
+                return d;
+            }
+            sResourceStates.put(resId, state);
+            return d;
+        }
+        return state.newDrawable(res);
+    }
+
+    /**
+     * Rounded rect label background of the given color, darker while pressed.
+     */
+    static Drawable getLabelBackground(Resources res, int color) {
+        checkDensity(res);
+        Drawable.ConstantState state = sLabelBackgroundStates.get(color);
+        if (state == null) {
+            Drawable d = createLabelBackground(color);
+            sLabelBackgroundStates.put(color, d.getConstantState());
+            return d;
+        }
+        return state.newDrawable(res);
+    }
+
+    private static void checkDensity(Resources res) {
+        final int densityDpi = res.getDisplayMetrics().densityDpi;
+        if (densityDpi != sDensityDpi) {
+            sResourceStates.clear();
+            sLabelBackgroundStates.clear();
+            sDensityDpi = densityDpi;
+        }
+    }
+
+    private static Drawable createLabelBackground(int color) {
+        int darkColor = darker(color, 0.7f);
+        StateListDrawable d = new StateListDrawable();
+        // normal state drawable
+        ShapeDrawable normal = new ShapeDrawable(new RoundRectShape(LABEL_CORNER_RADII, new RectF(0, 0, 0, 0), new float[8]));
+        normal.getPaint().setColor(color);
+        d.addState(new int[]{-android.R.attr.state_pressed}, normal);
+        // dark state drawable
+        ShapeDrawable pressed = new ShapeDrawable(new RoundRectShape(LABEL_CORNER_RADII, new RectF(0, 0, 0, 0), new float[8]));
+        pressed.getPaint().setColor(darkColor);
+        d.addState(new int[]{android.R.attr.state_pressed}, pressed);
+
+        return d;
+    }
+
+    private static int darker(int color, float factor) {
+        int a = Color.alpha(color);
+        int r = Color.red(color);
+        int g = Color.green(color);
+        int b = Color.blue(color);
+
+        return Color.argb(a,
+                Math.max((int)(r*factor), 0),
+                Math.max((int)(g*factor), 0),
+                Math.max((int)(b*factor), 0));
+    }
+}
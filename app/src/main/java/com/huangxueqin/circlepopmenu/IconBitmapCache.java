@@ -0,0 +1,135 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.util.LruCache;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Process wide cache of icons rasterized at their on-screen size, keyed by drawable
+ * identity and target size. Drawables sharing a {@link Drawable.ConstantState}, like
+ * the ones handed out by {@link DrawableRegistry}, share one bitmap.
+ *
+ * <p>Only used on the ui thread.</p>
+ */
+public final class IconBitmapCache {
+    private static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static LruCache<Key, Bitmap> sCache = createCache(DEFAULT_MAX_BYTES);
+    private static final Key sLookupKey = new Key();
+
+    private IconBitmapCache() {
+    }
+
+    /**
+     * Sets the memory budget of all cached icons, dropping the current entries.
+     */
+    public static void setMaxBytes(int maxBytes) {
+        if (maxBytes != sCache.maxSize()) {
+            sCache.evictAll();
+            sCache = createCache(maxBytes);
+        }
+    }
+
+    public static int hitCount() {
+        return sCache.hitCount();
+    }
+
+    public static int missCount() {
+        return sCache.missCount();
+    }
+
+    public static void clear() {
+        sCache.evictAll();
+    }
+
+    /**
+     * Returns the drawable rasterized at width x height.
+     */
+    static Bitmap get(Drawable drawable, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        Object identity = drawable.getConstantState() != null ? drawable.getConstantState() : drawable;
+        sLookupKey.set(identity, width, height);
+        Bitmap bitmap = sCache.get(sLookupKey);
+        sLookupKey.clear();
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            drawable.setBounds(0, 0, width, height);
+            drawable.draw(new Canvas(bitmap));
+            sCache.put(Key.stored(identity, width, height), bitmap);
+        }
+        return bitmap;
+    }
+
+    private static LruCache<Key, Bitmap> createCache(int maxBytes) {
+        return new LruCache<Key, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Cached entries reference the drawable weakly, so a cached icon does not keep the full
+     * size source alive outside the budget. Entries of collected drawables match no lookup
+     * and age out of the LRU.
+     */
+    private static final class Key {
+        // strong for the lookup key, weak for the stored ones
+        Object identity;
+        WeakReference<Object> weakIdentity;
+        int identityHash;
+        int width;
+        int height;
+
+        static Key stored(Object identity, int width, int height) {
+            Key key = new Key();
+            key.set(identity, width, height);
+            key.weakIdentity = new WeakReference<>(identity);
+            key.identity = null;
+            return key;
+        }
+
+        void set(Object identity, int width, int height) {
+            this.identity = identity;
+            this.identityHash = System.identityHashCode(identity);
+            this.width = width;
+            this.height = height;
+        }
+
+        void clear() {
+            identity = null;
+        }
+
+        Object identity() {
+            return identity != null ? identity : weakIdentity != null ? weakIdentity.get() : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            final Object identity = identity();
+            return identity != null && identity == other.identity()
+                    && width == other.width && height == other.height;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = identityHash;
+            result = 31 * result + width;
+            result = 31 * result + height;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decodes icons on a background executor and delivers them on the main thread.
+ * Concurrent requests for the same icon share one decode, a target requesting a
+ * new icon or being cancelled stops receiving the old one, and decoded icons are
+ * kept in a small memory cache.
+ *
+ * <p>{@link #load} and {@link #cancel} must be called on the main thread.</p>
+ */
+public final class IconLoader {
+    private static final int DECODED_CACHE_MAX_BYTES = 4 * 1024 * 1024;
+    private static final int DECODE_THREADS = 2;
+
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(DECODE_THREADS, new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "IconLoader");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private static final LruCache<String, BitmapDrawable> sDecoded = new LruCache<String, BitmapDrawable>(DECODED_CACHE_MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, BitmapDrawable value) {
+            return value.getBitmap().getByteCount();
+        }
+    };
+    // in flight decodes by cache key, and the decode each target is waiting for
+    private static final Map<String, Task> sTasks = new HashMap<>();
+    private static final Map<Target, Task> sTargetTasks = new HashMap<>();
+
+    private IconLoader() {
+    }
+
+    /**
+     * Something an icon can be loaded from. The key identifies the decoded icon,
+     * requests with equal keys are coalesced.
+     */
+    public static abstract class Source {
+        abstract String key();
+
+        abstract Bitmap decode(Resources res, BitmapFactory.Options options);
+
+        /**
+         * Used when the source can not be decoded as a bitmap.
+         */
+        Drawable fallback(Context context) {
+            return null;
+        }
+    }
+
+    public static Source fromResource(final int resId) {
+        return new Source() {
+            @Override
+            String key() {
+                return "res:" + resId;
+            }
+
+            @Override
+            Bitmap decode(Resources res, BitmapFactory.Options options) {
+                return BitmapFactory.decodeResource(res, resId, options);
+            }
+
+            @Override
+            Drawable fallback(Context context) {
+                // vector and xml drawables
+                return DrawableRegistry.getDrawable(context, resId);
+            }
+        };
+    }
+
+    public static Source fromFile(final String path) {
+        return new Source() {
+            @Override
+            String key() {
+                return "file:" + path;
+            }
+
+            @Override
+            Bitmap decode(Resources res, BitmapFactory.Options options) {
+                return BitmapFactory.decodeFile(path, options);
+            }
+        };
+    }
+
+    /**
+     * @param key identifies the data, equal keys must mean equal data
+     */
+    public static Source fromBytes(final String key, final byte[] data) {
+        return new Source() {
+            @Override
+            String key() {
+                return "bytes:" + key;
+            }
+
+            @Override
+            Bitmap decode(Resources res, BitmapFactory.Options options) {
+                return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            }
+        };
+    }
+
+    interface Target {
+        void onIconLoaded(Drawable icon);
+    }
+
+    /**
+     * Loads the icon subsampled to no less than targetSize pixels, or at full size if
+     * targetSize is not positive. The target receives the icon right away if it is cached.
+     */
+    static void load(Context context, Source source, int targetSize, Target target) {
+        cancel(target);
+        final String cacheKey = source.key() + "@" + Math.max(0, targetSize);
+        final Resources res = context.getResources();
+        BitmapDrawable cached = sDecoded.get(cacheKey);
+        if (cached != null) {
+            target.onIconLoaded(cached.getConstantState().newDrawable(res));
+            return;
+        }
+
+        Task task = sTasks.get(cacheKey);
+        if (task == null) {
+            // queued and in flight tasks must not keep an activity alive
+            task = new Task(context.getApplicationContext(), source, cacheKey, targetSize);
+            sTasks.put(cacheKey, task);
+            sExecutor.execute(task);
+        }
+        task.mTargets.add(target);
+        sTargetTasks.put(target, task);
+    }
+
+    static void cancel(Target target) {
+        Task task = sTargetTasks.remove(target);
+        if (task == null) {
+            return;
+        }
+        task.mTargets.remove(target);
+        if (task.mTargets.isEmpty()) {
+            // nobody waits for it anymore
+            task.mCancelled = true;
+            sTasks.remove(task.mCacheKey);
+        }
+    }
+
+    private static int computeSampleSize(int width, int height, int targetSize) {
+        int sampleSize = 1;
+        if (targetSize > 0) {
+            while (width / (sampleSize * 2) >= targetSize && height / (sampleSize * 2) >= targetSize) {
+                sampleSize *= 2;
+            }
+        }
+        return sampleSize;
+    }
+
+    private static final class Task implements Runnable {
+        final Context mContext;
+        final Source mSource;
+        final String mCacheKey;
+        final int mTargetSize;
+        // only touched on the main thread
+        final List<Target> mTargets = new ArrayList<>();
+        volatile boolean mCancelled = false;
+
+        Task(Context context, Source source, String cacheKey, int targetSize) {
+            mContext = context;
+            mSource = source;
+            mCacheKey = cacheKey;
+            mTargetSize = targetSize;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            final Resources res = mContext.getResources();
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            mSource.decode(res, options);
+            Bitmap bitmap = null;
+            if (!mCancelled && options.outWidth > 0 && options.outHeight > 0) {
+                options.inJustDecodeBounds = false;
+                options.inSampleSize = computeSampleSize(options.outWidth, options.outHeight, mTargetSize);
+                bitmap = mSource.decode(res, options);
+            }
+
+            final Bitmap result = bitmap;
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(result);
+                }
+            });
+        }
+
+        private void deliver(Bitmap bitmap) {
+            if (sTasks.get(mCacheKey) == this) {
+                sTasks.remove(mCacheKey);
+            }
+            if (mCancelled) {
+                return;
+            }
+            final Resources res = mContext.getResources();
+            Drawable.ConstantState state = null;
+            if (bitmap != null) {
+                BitmapDrawable decoded = new BitmapDrawable(res, bitmap);
+                sDecoded.put(mCacheKey, decoded);
+                state = decoded.getConstantState();
+            }
+            for (Target target : mTargets) {
+                sTargetTasks.remove(target);
+                Drawable icon = state != null ? state.newDrawable(res) : mSource.fallback(mContext);
+                // nothing could be loaded, the target keeps its placeholder
+                if (icon != null) {
+                    target.onIconLoaded(icon);
+                }
+            }
+            mTargets.clear();
+        }
+    }
+}
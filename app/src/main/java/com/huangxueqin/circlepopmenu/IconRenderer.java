@@ -0,0 +1,25 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.graphics.Canvas;
+
+/**
+ * Draws the icon of a circle button, see {@link CircleButton#setIconRenderer(IconRenderer)}.
+ * A renderer may change its icon with a progress from 0 to 1, the main button of a menu
+ * gets the expand progress of the menu.
+ *
+ * <p>Everything depending on the size belongs into {@link #onSizeChanged}, which runs only
+ * when the button size changes. {@link #draw} runs on every frame and should not allocate.
+ * A renderer keeps state for one size, so every button needs an instance of its own.</p>
+ */
+public abstract class IconRenderer {
+
+    /**
+     * @param cx center of the circle
+     * @param cy center of the circle
+     * @param radius radius of the circle, without shadow
+     * @param density display density
+     */
+    protected abstract void onSizeChanged(float cx, float cy, int radius, float density);
+
+    protected abstract void draw(Canvas canvas, float progress);
+}
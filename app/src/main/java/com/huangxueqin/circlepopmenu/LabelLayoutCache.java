@@ -0,0 +1,161 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.AsyncTask;
+import android.text.BoringLayout;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+/**
+ * Process wide LRU cache of menu label text layouts, keyed by text, text size,
+ * typeface, color and max width. Labels are short strings repeated across menus, so
+ * measuring and drawing one is usually a cache lookup.
+ *
+ * <p>Layouts and their paint are shared by every label showing them and must not be
+ * changed. Only plain strings are cached, styled text could differ in spans alone.
+ * Lookups happen on the ui thread, {@link #warmUp} builds layouts in the background.</p>
+ */
+public final class LabelLayoutCache {
+    private static final int MAX_ENTRIES = 128;
+    // a label narrower than the max width is stored once, independent of the max width
+    private static final int UNBOUNDED = -1;
+
+    private static final LruCache<Key, Layout> sCache = new LruCache<>(MAX_ENTRIES);
+    private static final Key sLookupKey = new Key();
+
+    private static int sHitCount;
+    private static int sMissCount;
+
+    private LabelLayoutCache() {
+    }
+
+    /**
+     * Prefills the cache with unconstrained layouts of the labels on a background
+     * thread, so the first expand of a menu does not measure text.
+     */
+    public static void warmUp(final float textSize, final Typeface typeface, final int textColor,
+                              final CharSequence... labels) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (CharSequence label : labels) {
+                    if (!(label instanceof String)) {
+                        continue;
+                    }
+                    Key key = new Key();
+                    key.set((String) label, textSize, typeface, textColor, UNBOUNDED);
+                    if (sCache.get(key) == null) {
+                        sCache.put(key, createLayout(label, textSize, typeface, textColor, Integer.MAX_VALUE));
+                    }
+                }
+            }
+        });
+    }
+
+    public static int hitCount() {
+        return sHitCount;
+    }
+
+    public static int missCount() {
+        return sMissCount;
+    }
+
+    public static int size() {
+        return sCache.size();
+    }
+
+    public static void clear() {
+        sCache.evictAll();
+    }
+
+    /**
+     * Returns the layout of text no wider than maxWidth. Must be called on the ui thread.
+     */
+    static Layout get(CharSequence text, float textSize, Typeface typeface, int textColor, int maxWidth) {
+        if (!(text instanceof String)) {
+            sMissCount++;
+            return createLayout(text, textSize, typeface, textColor, maxWidth);
+        }
+        final String s = (String) text;
+        sLookupKey.set(s, textSize, typeface, textColor, UNBOUNDED);
+        Layout layout = sCache.get(sLookupKey);
+        if (layout != null && layout.getWidth() <= maxWidth) {
+            sHitCount++;
+            return layout;
+        }
+        sLookupKey.set(s, textSize, typeface, textColor, maxWidth);
+        layout = sCache.get(sLookupKey);
+        if (layout != null) {
+            sHitCount++;
+            return layout;
+        }
+
+        sMissCount++;
+        layout = createLayout(text, textSize, typeface, textColor, maxWidth);
+        Key key = new Key();
+        key.set(s, textSize, typeface, textColor, layout.getWidth() < maxWidth ? UNBOUNDED : maxWidth);
+        sCache.put(key, layout);
+        return layout;
+    }
+
+    private static Layout createLayout(CharSequence text, float textSize, Typeface typeface, int textColor,
+                                       int maxWidth) {
+        TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(textSize);
+        paint.setTypeface(typeface);
+        paint.setColor(textColor);
+        maxWidth = Math.max(0, maxWidth);
+
+        BoringLayout.Metrics metrics = BoringLayout.isBoring(text, paint);
+        if (metrics != null && metrics.width <= maxWidth) {
+            return BoringLayout.make(text, paint, metrics.width,
+                    Layout.Alignment.ALIGN_CENTER, 1f, 0f, metrics, false);
+        }
+        int textWidth = Math.min(maxWidth, (int) Math.ceil(Layout.getDesiredWidth(text, paint)));
+        return new StaticLayout(text, paint, textWidth,
+                Layout.Alignment.ALIGN_CENTER, 1f, 0f, false);
+    }
+
+    private static final class Key {
+        String text;
+        float textSize;
+        Typeface typeface;
+        int textColor;
+        int maxWidth;
+
+        void set(String text, float textSize, Typeface typeface, int textColor, int maxWidth) {
+            this.text = text;
+            this.textSize = textSize;
+            this.typeface = typeface;
+            this.textColor = textColor;
+            this.maxWidth = maxWidth;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return textSize == other.textSize && textColor == other.textColor && maxWidth == other.maxWidth
+                    && text.equals(other.text)
+                    && (typeface == null ? other.typeface == null : typeface.equals(other.typeface));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = text.hashCode();
+            result = 31 * result + Float.floatToIntBits(textSize);
+            result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+            result = 31 * result + textColor;
+            result = 31 * result + maxWidth;
+            return result;
+        }
+    }
+}
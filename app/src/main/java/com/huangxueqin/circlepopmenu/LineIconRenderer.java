@@ -0,0 +1,91 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Icon made of straight lines which morphs into a second icon of as many lines. Lines are
+ * given like {@link Canvas#drawLines(float[], Paint)} takes them, four values per line, in
+ * units of half the icon size with the origin at the circle center and y pointing down.
+ * The icon is half as wide as the circle.
+ *
+ * <p>Both icons are scaled once per size, a frame only interpolates the end points.</p>
+ */
+public final class LineIconRenderer extends IconRenderer {
+    private static final float DIAGONAL = (float) Math.sqrt(0.5);
+    private static final float[] PLUS = {
+            -1, 0, 1, 0,
+            0, -1, 0, 1,
+    };
+    // the plus turned by 45 degrees clockwise
+    private static final float[] CLOSE = {
+            -DIAGONAL, -DIAGONAL, DIAGONAL, DIAGONAL,
+            DIAGONAL, -DIAGONAL, -DIAGONAL, DIAGONAL,
+    };
+    private static final float STROKE_WIDTH_DP = 2f;
+
+    private final float[] mFrom;
+    private final float[] mTo;
+    // both icons scaled to the current size, and the points of the last frame
+    private final float[] mFromPoints;
+    private final float[] mToPoints;
+    private final float[] mFramePoints;
+    private final Paint mPaint;
+    private float mFrameProgress = Float.NaN;
+
+    /**
+     * The plus of a menu main button, which turns into a close cross while the menu expands.
+     */
+    public static LineIconRenderer plusToClose(int color) {
+        return new LineIconRenderer(PLUS, CLOSE, color);
+    }
+
+    public LineIconRenderer(float[] lines, int color) {
+        this(lines, lines, color);
+    }
+
+    public LineIconRenderer(float[] from, float[] to, int color) {
+        if (from.length != to.length || from.length % 4 != 0) {
+            throw new IllegalArgumentException("icons need the same number of lines, four values each");
+        }
+        mFrom = from.clone();
+        mTo = to.clone();
+        mFromPoints = new float[from.length];
+        mToPoints = new float[from.length];
+        mFramePoints = new float[from.length];
+        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPaint.setStyle(Paint.Style.STROKE);
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
+        mPaint.setColor(color);
+    }
+
+    public void setColor(int color) {
+        mPaint.setColor(color);
+    }
+
+    @Override
+    protected void onSizeChanged(float cx, float cy, int radius, float density) {
+        final float strokeWidth = STROKE_WIDTH_DP * density;
+        mPaint.setStrokeWidth(strokeWidth);
+        // round caps stick out half the stroke width
+        final float scale = Math.max(0f, radius / 2f - strokeWidth / 2);
+        for (int i = 0; i < mFrom.length; i += 2) {
+            mFromPoints[i] = cx + mFrom[i] * scale;
+            mFromPoints[i+1] = cy + mFrom[i+1] * scale;
+            mToPoints[i] = cx + mTo[i] * scale;
+            mToPoints[i+1] = cy + mTo[i+1] * scale;
+        }
+        mFrameProgress = Float.NaN;
+    }
+
+    @Override
+    protected void draw(Canvas canvas, float progress) {
+        if (progress != mFrameProgress) {
+            for (int i = 0; i < mFramePoints.length; i++) {
+                mFramePoints[i] = mFromPoints[i] + (mToPoints[i] - mFromPoints[i]) * progress;
+            }
+            mFrameProgress = progress;
+        }
+        canvas.drawLines(mFramePoints, mPaint);
+    }
+}
@@ -15,7 +15,9 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-//        mCirclePopMenu = (CirclePopMenu) findViewById(R.id.circle_pop_menu);
+        mCirclePopMenu = (CirclePopMenu) findViewById(R.id.circle_pop_menu);
+        // items come from the menu_items resource of the layout
+        mCirclePopMenu.prewarmItemsWhenIdle();
     }
     private static void D(String msg) {
         Log.d(CircleButton.class.getSimpleName(), msg);
@@ -0,0 +1,113 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.content.Context;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+/**
+ * Hosts the items of a {@link CirclePopMenu} measuring only its main button. The panel
+ * lives in a layer shared by all menus of a window, on top of the content view, and is
+ * moved by translation so its main button slot covers the menu's main button. Measure,
+ * layout and scroll gestures are handed back to the menu.
+ */
+final class MenuItemPanel extends ViewGroup {
+    private final CirclePopMenu mMenu;
+    private final CirclePopMenu.TouchState mTouchState = new CirclePopMenu.TouchState();
+
+    MenuItemPanel(Context context, CirclePopMenu menu) {
+        super(context);
+        mMenu = menu;
+    }
+
+    /**
+     * Returns the layer of the window the view is attached to, creating it on first use,
+     * or null if the window has no content frame to put it in.
+     */
+    static ViewGroup obtainLayer(View view) {
+        View content = view.getRootView().findViewById(android.R.id.content);
+        if (!(content instanceof FrameLayout)) {
+            return null;
+        }
+        FrameLayout frame = (FrameLayout) content;
+        View layer = frame.findViewById(R.id.circle_pop_menu_overlay_layer);
+        if (layer == null || layer.getParent() != frame) {
+            // not clickable, touches outside the panels go on to the content below
+            FrameLayout newLayer = new FrameLayout(view.getContext());
+            newLayer.setId(R.id.circle_pop_menu_overlay_layer);
+            frame.addView(newLayer, new FrameLayout.LayoutParams(
+                    FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT));
+            layer = newLayer;
+        }
+        return (ViewGroup) layer;
+    }
+
+    /**
+     * Removes the layer from the content view once its last panel is gone. Posted, the
+     * panels are released while the window is dispatching their menus' detach.
+     */
+    static void releaseLayer(final ViewGroup layer) {
+        if (layer.getChildCount() > 0) {
+            return;
+        }
+        layer.post(new Runnable() {
+            @Override
+            public void run() {
+                // another menu may have put its panel in meanwhile
+                if (layer.getChildCount() == 0 && layer.getParent() instanceof ViewGroup) {
+                    ((ViewGroup) layer.getParent()).removeView(layer);
+                }
+            }
+        });
+    }
+
+    void attachItem(View item) {
+        addViewInLayout(item, -1, generateDefaultLayoutParams(), true);
+    }
+
+    void detachItem(View item) {
+        removeViewInLayout(item);
+    }
+
+    @Override
+    public void requestLayout() {
+        // null while the super constructor runs
+        if (mMenu != null && mMenu.isUpdating()) {
+            return;
+        }
+        super.requestLayout();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        mMenu.measurePanel(widthMeasureSpec, heightMeasureSpec);
+        setMeasuredDimension(mMenu.getPanelWidth(), mMenu.getPanelHeight());
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        mMenu.layoutPanel(changed);
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        return mMenu.dispatchHostTouchEvent(this, mTouchState, ev);
+    }
+
+    @Override
+    public void requestDisallowInterceptTouchEvent(boolean disallowIntercept) {
+        mTouchState.disallowIntercept = disallowIntercept;
+        super.requestDisallowInterceptTouchEvent(disallowIntercept);
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        return mMenu.interceptScroll(ev);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent ev) {
+        return mMenu.onScrollTouchEvent(ev);
+    }
+}
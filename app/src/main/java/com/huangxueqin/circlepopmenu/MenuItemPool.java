@@ -0,0 +1,70 @@
+package com.huangxueqin.circlepopmenu;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detached menu items waiting to be bound again. Every {@link CirclePopMenu} has a pool of
+ * its own, menus sharing one through {@link CirclePopMenu#setItemPool(MenuItemPool)}, like
+ * the menus of list rows, borrow their items from it while expanded and give them back when
+ * collapsed. Only one menu of a shared pool is open at a time, opening another one collapses
+ * the previous.
+ *
+ * <p>Only used on the ui thread.</p>
+ */
+public final class MenuItemPool {
+    private final int mMaxSize;
+    private final List<CirclePopMenuItem> mItems = new ArrayList<>();
+    private final List<CirclePopMenuItem> mFlatItems = new ArrayList<>();
+    private CirclePopMenu mOpenMenu;
+
+    public MenuItemPool() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxSize items of each kind kept, further ones are dropped
+     */
+    public MenuItemPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    public int size() {
+        return mItems.size() + mFlatItems.size();
+    }
+
+    public void clear() {
+        mItems.clear();
+        mFlatItems.clear();
+    }
+
+    CirclePopMenuItem acquire(boolean flat) {
+        List<CirclePopMenuItem> items = flat ? mFlatItems : mItems;
+        return items.isEmpty() ? null : items.remove(items.size() - 1);
+    }
+
+    void release(CirclePopMenuItem item) {
+        List<CirclePopMenuItem> items = item.isFlat() ? mFlatItems : mItems;
+        if (items.size() < mMaxSize) {
+            items.add(item);
+        }
+    }
+
+    boolean isEmpty(boolean flat) {
+        return flat ? mFlatItems.isEmpty() : mItems.isEmpty();
+    }
+
+    void onMenuOpened(CirclePopMenu menu) {
+        CirclePopMenu previous = mOpenMenu;
+        mOpenMenu = menu;
+        if (previous != null && previous != menu) {
+            previous.setExpand(false);
+        }
+    }
+
+    void onMenuClosed(CirclePopMenu menu) {
+        if (mOpenMenu == menu) {
+            mOpenMenu = null;
+        }
+    }
+}
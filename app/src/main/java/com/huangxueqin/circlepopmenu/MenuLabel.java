@@ -0,0 +1,120 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.text.Layout;
+import android.view.View;
+
+/**
+ * Single line menu label which measures and draws a layout from {@link LabelLayoutCache}
+ * instead of running a full TextView for a short static string.
+ */
+final class MenuLabel extends View {
+    private CharSequence mText;
+    private float mTextSize;
+    private int mTextColor;
+    private Typeface mTypeface;
+    private Layout mLayout;
+    // drawn by onDraw so a background shared through DrawableRegistry gets its bounds right before drawing
+    private Drawable mLabelBackground;
+
+    MenuLabel(Context context) {
+        super(context);
+    }
+
+    void setText(CharSequence text) {
+        mText = text;
+        // a plain view has no text of its own for accessibility services to read
+        setContentDescription(text);
+        mLayout = null;
+        requestLayout();
+        invalidate();
+    }
+
+    CharSequence getText() {
+        return mText;
+    }
+
+    void setLabelBackground(Drawable background) {
+        mLabelBackground = background;
+        if (background != null && background.isStateful()) {
+            background.setState(getDrawableState());
+        }
+        invalidate();
+    }
+
+    void setTextSize(float textSize) {
+        if (mTextSize != textSize) {
+            mTextSize = textSize;
+            mLayout = null;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    void setTextColor(int color) {
+        if (mTextColor != color) {
+            // the color is part of the cached layout
+            mTextColor = color;
+            mLayout = null;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    void setTypeface(Typeface typeface) {
+        if (mTypeface != typeface) {
+            mTypeface = typeface;
+            mLayout = null;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int horiPadding = getPaddingLeft() + getPaddingRight();
+        final int vertPadding = getPaddingTop() + getPaddingBottom();
+        int maxTextWidth = Integer.MAX_VALUE;
+        if (MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.UNSPECIFIED) {
+            maxTextWidth = MeasureSpec.getSize(widthMeasureSpec) - horiPadding;
+        }
+
+        mLayout = mText == null ? null : LabelLayoutCache.get(mText, mTextSize, mTypeface, mTextColor, maxTextWidth);
+        int width = horiPadding + (mLayout != null ? mLayout.getWidth() : 0);
+        int height = vertPadding + (mLayout != null ? mLayout.getHeight() : 0);
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+        if (mLabelBackground != null && mLabelBackground.isStateful()
+                && mLabelBackground.setState(getDrawableState())) {
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mLabelBackground != null) {
+            Drawable bg = mLabelBackground.getCurrent();
+            if (bg != null) {
+                bg.setBounds(0, 0, getWidth(), getHeight());
+                bg.draw(canvas);
+            }
+        }
+        if (mLayout == null) {
+            return;
+        }
+        // centered like a TextView with CENTER gravity
+        final int left = (getWidth() - mLayout.getWidth()) / 2;
+        final int top = (getHeight() - mLayout.getHeight()) / 2;
+        canvas.save();
+        canvas.translate(left, top);
+        mLayout.draw(canvas);
+        canvas.restore();
+    }
+}
@@ -0,0 +1,180 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+/**
+ * Runtime cost of a {@link CirclePopMenu}, collected only while a
+ * {@link CirclePopMenu.OnMetricsListener} is set.
+ *
+ * <p>Measure, layout and draw counters are cumulative until {@link #reset()} and count
+ * the menu, its items and circle buttons separately. Times are inclusive, a menu's
+ * measure time contains the measure time of the items it measured. Animation values
+ * describe the last expand or collapse.</p>
+ */
+public final class MenuMetrics {
+    public static final int VIEW_MENU = 0;
+    public static final int VIEW_ITEM = 1;
+    public static final int VIEW_BUTTON = 2;
+
+    public static final int PASS_MEASURE = 0;
+    public static final int PASS_LAYOUT = 1;
+    public static final int PASS_DRAW = 2;
+
+    private static final int VIEW_COUNT = 3;
+    private static final int PASS_COUNT = 3;
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+
+    private final int[] mPassCounts = new int[VIEW_COUNT * PASS_COUNT];
+    private final long[] mPassNanos = new long[VIEW_COUNT * PASS_COUNT];
+
+    private final long mFrameIntervalNanos;
+    // null below jelly bean, frames are then timed by the animation updates
+    private final FrameTracker mFrameTracker;
+    private boolean mExpanding;
+    private int mFrameCount;
+    private int mDroppedFrames;
+    private long mWorstFrameNanos;
+    private long mLastFrameNanos;
+
+    MenuMetrics(float refreshRate) {
+        if (refreshRate <= 0) {
+            refreshRate = DEFAULT_REFRESH_RATE;
+        }
+        mFrameIntervalNanos = (long) (1000000000L / refreshRate);
+        mFrameTracker = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? new FrameTracker(this) : null;
+    }
+
+    public int getPassCount(int view, int pass) {
+        return mPassCounts[view * PASS_COUNT + pass];
+    }
+
+    public long getPassTimeNanos(int view, int pass) {
+        return mPassNanos[view * PASS_COUNT + pass];
+    }
+
+    /**
+     * Whether the last animation expanded the menu.
+     */
+    public boolean isExpanding() {
+        return mExpanding;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Vsync intervals the last animation missed, judged by the time between its frames.
+     */
+    public int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    public long getWorstFrameNanos() {
+        return mWorstFrameNanos;
+    }
+
+    public float getLabelLayoutHitRate() {
+        return hitRate(LabelLayoutCache.hitCount(), LabelLayoutCache.missCount());
+    }
+
+    public float getIconBitmapHitRate() {
+        return hitRate(IconBitmapCache.hitCount(), IconBitmapCache.missCount());
+    }
+
+    public float getShadowHitRate() {
+        return hitRate(ShadowCache.hitCount(), ShadowCache.missCount());
+    }
+
+    /**
+     * Clears the measure, layout and draw counters.
+     */
+    public void reset() {
+        for (int i = 0; i < mPassCounts.length; i++) {
+            mPassCounts[i] = 0;
+            mPassNanos[i] = 0;
+        }
+    }
+
+    void record(int view, int pass, long startNanos) {
+        final int index = view * PASS_COUNT + pass;
+        mPassCounts[index]++;
+        mPassNanos[index] += System.nanoTime() - startNanos;
+    }
+
+    void beginAnimation(boolean expanding) {
+        mExpanding = expanding;
+        mFrameCount = 0;
+        mDroppedFrames = 0;
+        mWorstFrameNanos = 0;
+        mLastFrameNanos = 0;
+        if (mFrameTracker != null) {
+            mFrameTracker.start();
+        }
+    }
+
+    void onAnimationUpdate() {
+        if (mFrameTracker == null) {
+            onFrame(System.nanoTime());
+        }
+    }
+
+    void endAnimation() {
+        if (mFrameTracker != null) {
+            mFrameTracker.stop();
+        }
+    }
+
+    private void onFrame(long frameTimeNanos) {
+        if (mLastFrameNanos > 0) {
+            final long frameNanos = frameTimeNanos - mLastFrameNanos;
+            mWorstFrameNanos = Math.max(mWorstFrameNanos, frameNanos);
+            final long missed = (frameNanos + mFrameIntervalNanos / 2) / mFrameIntervalNanos - 1;
+            if (missed > 0) {
+                mDroppedFrames += missed;
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        mFrameCount++;
+    }
+
+    private static float hitRate(int hits, int misses) {
+        final int total = hits + misses;
+        return total == 0 ? 0f : (float) hits / total;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class FrameTracker implements Choreographer.FrameCallback {
+        private final MenuMetrics mMetrics;
+        private boolean mRunning = false;
+
+        FrameTracker(MenuMetrics metrics) {
+            mMetrics = metrics;
+        }
+
+        void start() {
+            if (!mRunning) {
+                mRunning = true;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+
+        void stop() {
+            if (mRunning) {
+                mRunning = false;
+                Choreographer.getInstance().removeFrameCallback(this);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) {
+                return;
+            }
+            mMetrics.onFrame(frameTimeNanos);
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.content.res.XmlResourceParser;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.util.Xml;
+import android.view.InflateException;
+import android.view.View;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Items of a {@code res/menu} style resource, parsed once and shared by every menu showing
+ * it. The root {@code <menu>} may set {@code menu_label_position}, each {@code <item>} has
+ * an {@code android:id}, {@code android:title} and {@code android:icon}.
+ *
+ * <pre>
+ * &lt;menu xmlns:android="http://schemas.android.com/apk/res/android"
+ *     xmlns:app="http://schemas.android.com/apk/res-auto"
+ *     app:menu_label_position="left"&gt;
+ *     &lt;item android:id="@+id/copy" android:title="@string/copy" android:icon="@drawable/copy" /&gt;
+ * &lt;/menu&gt;
+ * </pre>
+ *
+ * <p>Immutable. Icons are kept as {@link Drawable.ConstantState}, every item gets a new
+ * drawable sharing it. Resources are cached per id and configuration, the last two
+ * configurations are kept so rotating back and forth parses nothing again. Only used on
+ * the ui thread.</p>
+ */
+public final class MenuResource {
+    private static final int CACHED_CONFIGURATIONS = 2;
+
+    // most recently used first, titles and icons may resolve differently per configuration
+    @SuppressWarnings("unchecked")
+    private static final SparseArray<MenuResource>[] sCaches = new SparseArray[CACHED_CONFIGURATIONS];
+    private static final Configuration[] sConfigurations = new Configuration[CACHED_CONFIGURATIONS];
+
+    private final int[] mIds;
+    private final CharSequence[] mTitles;
+    private final int[] mIconResIds;
+    private final Drawable.ConstantState[] mIcons;
+    private final CirclePopMenu.MenuLabelPosition mLabelPosition;
+
+    private MenuResource(int[] ids, CharSequence[] titles, int[] iconResIds, Drawable.ConstantState[] icons,
+                         CirclePopMenu.MenuLabelPosition labelPosition) {
+        mIds = ids;
+        mTitles = titles;
+        mIconResIds = iconResIds;
+        mIcons = icons;
+        mLabelPosition = labelPosition;
+    }
+
+    /**
+     * Returns the parsed menu resource, parsing it on first use.
+     *
+     * @throws InflateException if the resource is not a valid menu
+     */
+    public static MenuResource get(Context context, int resId) {
+        final SparseArray<MenuResource> cache = cacheFor(context.getResources().getConfiguration());
+        MenuResource menu = cache.get(resId);
+        if (menu == null) {
+            menu = parse(context, resId);
+            cache.put(resId, menu);
+        }
+        return menu;
+    }
+
+    private static SparseArray<MenuResource> cacheFor(Configuration config) {
+        int slot = 0;
+        while (slot < CACHED_CONFIGURATIONS - 1
+                && sConfigurations[slot] != null && !sConfigurations[slot].equals(config)) {
+            slot++;
+        }
+        SparseArray<MenuResource> cache = sCaches[slot];
+        Configuration cachedConfig = sConfigurations[slot];
+        if (cachedConfig == null || !cachedConfig.equals(config)) {
+            // reuses the least recently used slot
+            if (cachedConfig == null) {
+                cachedConfig = new Configuration();
+                cache = new SparseArray<>();
+            }
+            cachedConfig.setTo(config);
+            cache.clear();
+        }
+        // moves the slot to the front
+        for (int i = slot; i > 0; i--) {
+            sCaches[i] = sCaches[i - 1];
+            sConfigurations[i] = sConfigurations[i - 1];
+        }
+        sCaches[0] = cache;
+        sConfigurations[0] = cachedConfig;
+        return cache;
+    }
+
+    private static MenuResource parse(Context context, int resId) {
+        XmlResourceParser parser = context.getResources().getXml(resId);
+        try {
+            return parse(context, parser);
+        } catch (XmlPullParserException e) {
+            throw new InflateException("Error parsing menu resource " + resId, e);
+        } catch (IOException e) {
+            throw new InflateException("Error parsing menu resource " + resId, e);
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static MenuResource parse(Context context, XmlResourceParser parser)
+            throws XmlPullParserException, IOException {
+        final Resources res = context.getResources();
+        final AttributeSet attrs = Xml.asAttributeSet(parser);
+        CirclePopMenu.MenuLabelPosition labelPosition = null;
+        List<Integer> ids = new ArrayList<>();
+        List<CharSequence> titles = new ArrayList<>();
+        List<Integer> iconResIds = new ArrayList<>();
+
+        int type;
+        while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if (type != XmlPullParser.START_TAG) {
+                continue;
+            }
+            if ("menu".equals(parser.getName())) {
+                TypedArray a = res.obtainAttributes(attrs, R.styleable.CirclePopMenuResource);
+                int position = a.getInt(R.styleable.CirclePopMenuResource_menu_label_position, -1);
+                a.recycle();
+                if (position >= 0) {
+                    try {
+                        labelPosition = CirclePopMenu.MenuLabelPosition.fromId(position);
+                    } catch (IllegalArgumentException e) {
+                        throw new XmlPullParserException(e.getMessage(), parser, e);
+                    }
+                }
+            } else if ("item".equals(parser.getName())) {
+                TypedArray a = res.obtainAttributes(attrs, R.styleable.CirclePopMenuResourceItem);
+                ids.add(a.getResourceId(R.styleable.CirclePopMenuResourceItem_android_id, View.NO_ID));
+                titles.add(a.getText(R.styleable.CirclePopMenuResourceItem_android_title));
+                iconResIds.add(a.getResourceId(R.styleable.CirclePopMenuResourceItem_android_icon, 0));
+                a.recycle();
+            }
+        }
+
+        final int count = ids.size();
+        int[] idArray = new int[count];
+        int[] iconArray = new int[count];
+        Drawable.ConstantState[] icons = new Drawable.ConstantState[count];
+        for (int i = 0; i < count; i++) {
+            idArray[i] = ids.get(i);
+            iconArray[i] = iconResIds.get(i);
+            if (iconArray[i] != 0) {
+                icons[i] = DrawableRegistry.getDrawable(context, iconArray[i]).getConstantState();
+            }
+        }
+        return new MenuResource(idArray, titles.toArray(new CharSequence[count]), iconArray, icons, labelPosition);
+    }
+
+    public int size() {
+        return mIds.length;
+    }
+
+    /**
+     * The {@code android:id} of the item, or {@link View#NO_ID}.
+     */
+    public int getItemId(int position) {
+        return mIds[position];
+    }
+
+    public CharSequence getTitle(int position) {
+        return mTitles[position];
+    }
+
+    /**
+     * Label position set on the root element, null if it sets none.
+     */
+    public CirclePopMenu.MenuLabelPosition getLabelPosition() {
+        return mLabelPosition;
+    }
+
+    /**
+     * A new drawable of the item's icon, null if it has none.
+     */
+    Drawable newIcon(Context context, int position) {
+        if (mIcons[position] != null) {
+            return mIcons[position].newDrawable(context.getResources());
+        }
+        if (mIconResIds[position] != 0) {
+            // not shareable, the registry loads it every time
+            return DrawableRegistry.getDrawable(context, mIconResIds[position]);
+        }
+        return null;
+    }
+}
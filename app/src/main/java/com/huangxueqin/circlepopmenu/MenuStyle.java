@@ -0,0 +1,172 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.util.DisplayMetrics;
+
+/**
+ * Sizes, colors and backgrounds of a menu, resolved once from the menu's attributes. The
+ * menu hands it to its items and circle buttons, which build themselves from it without
+ * resource or attribute lookups. Backgrounds are kept as {@link Drawable.ConstantState},
+ * every view gets a new drawable sharing it.
+ *
+ * <p>Immutable. Menus without attributes share the default style of the display.</p>
+ */
+public final class MenuStyle {
+    private static final int DEFAULT_MAIN_BUTTON_SIZE = 50;
+    private static final int DEFAULT_MENU_BUTTON_SIZE = 40;
+    private static final int DEFAULT_MENU_BUTTON_SPACING = 10;
+    private static final int DEFAULT_LABEL_TEXT_SIZE = 15;
+    private static final int DEFAULT_LABEL_SPACING = 10;
+    private static final int DEFAULT_LABEL_PADDING_PX = 10;
+    private static final int DEFAULT_LABEL_TEXT_COLOR = 0xff666666;
+    private static final int DEFAULT_LABEL_BACKGROUND_COLOR = 0x80ffffff;
+
+    // only used on the ui thread, replaced when density or font scale change
+    private static MenuStyle sDefault;
+
+    private final float mDensity;
+    private final float mScaledDensity;
+    private final int mMainButtonSize;
+    private final int mMenuButtonSize;
+    private final int mMenuButtonSpacing;
+    private final int mLabelTextSize;
+    private final int mLabelTextColor;
+    private final Typeface mLabelTypeface;
+    private final int mLabelSpacing;
+    private final int mLabelPadding;
+    private final Drawable.ConstantState mMainButtonBackground;
+    private final Drawable.ConstantState mMenuButtonBackground;
+    private final Drawable.ConstantState mLabelBackground;
+
+    private MenuStyle(DisplayMetrics dm, int mainButtonSize, int menuButtonSize, int menuButtonSpacing,
+                      int labelTextSize, int labelTextColor, Typeface labelTypeface, int labelSpacing,
+                      int labelPadding, Drawable.ConstantState mainButtonBackground,
+                      Drawable.ConstantState menuButtonBackground, Drawable.ConstantState labelBackground) {
+        mDensity = dm.density;
+        mScaledDensity = dm.scaledDensity;
+        mMainButtonSize = mainButtonSize;
+        mMenuButtonSize = menuButtonSize;
+        mMenuButtonSpacing = menuButtonSpacing;
+        mLabelTextSize = labelTextSize;
+        mLabelTextColor = labelTextColor;
+        mLabelTypeface = labelTypeface;
+        mLabelSpacing = labelSpacing;
+        mLabelPadding = labelPadding;
+        mMainButtonBackground = mainButtonBackground;
+        mMenuButtonBackground = menuButtonBackground;
+        mLabelBackground = labelBackground;
+    }
+
+    /**
+     * The style of menus without attributes on the display of the context.
+     */
+    public static MenuStyle getDefault(Context context) {
+        final DisplayMetrics dm = context.getResources().getDisplayMetrics();
+        MenuStyle style = sDefault;
+        if (style == null || style.mDensity != dm.density || style.mScaledDensity != dm.scaledDensity) {
+            style = createDefault(context, dm);
+            sDefault = style;
+        }
+        return style;
+    }
+
+    private static MenuStyle createDefault(Context context, DisplayMetrics dm) {
+        final Resources res = context.getResources();
+        Drawable.ConstantState circle = CircleRenderer.getDefaultCircleDrawable(context).getConstantState();
+        Drawable.ConstantState label = DrawableRegistry.getLabelBackground(res, DEFAULT_LABEL_BACKGROUND_COLOR)
+                .getConstantState();
+        return new MenuStyle(dm,
+                (int) (dm.density * DEFAULT_MAIN_BUTTON_SIZE + 0.5),
+                (int) (dm.density * DEFAULT_MENU_BUTTON_SIZE + 0.5),
+                (int) (dm.density * DEFAULT_MENU_BUTTON_SPACING + 0.5),
+                (int) (dm.scaledDensity * DEFAULT_LABEL_TEXT_SIZE + 0.5),
+                DEFAULT_LABEL_TEXT_COLOR,
+                null,
+                (int) (dm.density * DEFAULT_LABEL_SPACING + 0.5),
+                DEFAULT_LABEL_PADDING_PX,
+                circle, circle, label);
+    }
+
+    /**
+     * Resolves the style from the {@code CirclePopMenu} attributes, unset ones fall back to
+     * the default style.
+     */
+    static MenuStyle fromAttributes(Context context, TypedArray ta) {
+        final MenuStyle defaults = getDefault(context);
+        return new MenuStyle(context.getResources().getDisplayMetrics(),
+                ta.getDimensionPixelSize(R.styleable.CirclePopMenu_main_button_size, defaults.mMainButtonSize),
+                ta.getDimensionPixelSize(R.styleable.CirclePopMenu_menu_button_size, defaults.mMenuButtonSize),
+                ta.getDimensionPixelSize(R.styleable.CirclePopMenu_menu_button_spacing, defaults.mMenuButtonSpacing),
+                ta.getDimensionPixelSize(R.styleable.CirclePopMenu_menu_label_text_size, defaults.mLabelTextSize),
+                defaults.mLabelTextColor,
+                defaults.mLabelTypeface,
+                defaults.mLabelSpacing,
+                defaults.mLabelPadding,
+                sharedState(ta.getDrawable(R.styleable.CirclePopMenu_main_button_background),
+                        defaults.mMainButtonBackground),
+                sharedState(ta.getDrawable(R.styleable.CirclePopMenu_menu_button_background),
+                        defaults.mMenuButtonBackground),
+                sharedState(ta.getDrawable(R.styleable.CirclePopMenu_menu_label_background),
+                        defaults.mLabelBackground));
+    }
+
+    private static Drawable.ConstantState sharedState(Drawable d, Drawable.ConstantState fallback) {
+        Drawable.ConstantState state = d != null ? d.getConstantState() : null;
+        return state != null ? state : fallback;
+    }
+
+    public int getMainButtonSize() {
+        return mMainButtonSize;
+    }
+
+    public int getMenuButtonSize() {
+        return mMenuButtonSize;
+    }
+
+    public int getMenuButtonSpacing() {
+        return mMenuButtonSpacing;
+    }
+
+    public int getLabelTextSize() {
+        return mLabelTextSize;
+    }
+
+    public int getLabelTextColor() {
+        return mLabelTextColor;
+    }
+
+    public Typeface getLabelTypeface() {
+        return mLabelTypeface;
+    }
+
+    /**
+     * Space between a menu button and its label.
+     */
+    public int getLabelSpacing() {
+        return mLabelSpacing;
+    }
+
+    public int getLabelPadding() {
+        return mLabelPadding;
+    }
+
+    float getDensity() {
+        return mDensity;
+    }
+
+    Drawable newMainButtonBackground(Resources res) {
+        return mMainButtonBackground.newDrawable(res);
+    }
+
+    Drawable newMenuButtonBackground(Resources res) {
+        return mMenuButtonBackground.newDrawable(res);
+    }
+
+    Drawable newLabelBackground(Resources res) {
+        return mLabelBackground.newDrawable(res);
+    }
+}
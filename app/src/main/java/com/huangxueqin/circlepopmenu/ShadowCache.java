@@ -0,0 +1,108 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.graphics.Bitmap;
+import android.graphics.BlurMaskFilter;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.LruCache;
+
+/**
+ * Process wide cache of pre-blurred circle shadows. Every shadow is rendered once
+ * into a bitmap on a software canvas, so views drawing it can stay hardware accelerated.
+ */
+final class ShadowCache {
+    private static final int MAX_CACHE_BYTES = 2 * 1024 * 1024;
+
+    private static final LruCache<Key, Bitmap> sCache = new LruCache<Key, Bitmap>(MAX_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Key key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
+    // only used on the ui thread, reused for lookups
+    private static final Key sLookupKey = new Key();
+
+    private ShadowCache() {
+    }
+
+    /**
+     * Returns a bitmap of size {@code 2 * (radius + shadowWidth)} with the blurred shadow
+     * of a circle centered in it, or null if radius is not positive.
+     */
+    static Bitmap get(int radius, int shadowWidth, int color, float density) {
+        if (radius <= 0) {
+            return null;
+        }
+        sLookupKey.set(radius, shadowWidth, color, density);
+        Bitmap shadow = sCache.get(sLookupKey);
+        if (shadow == null) {
+            shadow = render(radius, shadowWidth, color);
+            Key key = new Key();
+            key.set(radius, shadowWidth, color, density);
+            sCache.put(key, shadow);
+        }
+        return shadow;
+    }
+
+    static int hitCount() {
+        return sCache.hitCount();
+    }
+
+    static int missCount() {
+        return sCache.missCount();
+    }
+
+    static void clear() {
+        sCache.evictAll();
+    }
+
+    private static Bitmap render(int radius, int shadowWidth, int color) {
+        final int size = 2 * (radius + shadowWidth);
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(color);
+        if (shadowWidth > 0) {
+            paint.setMaskFilter(new BlurMaskFilter(shadowWidth, BlurMaskFilter.Blur.NORMAL));
+        }
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawCircle(size / 2f, size / 2f, radius, paint);
+        return bitmap;
+    }
+
+    private static final class Key {
+        int radius;
+        int shadowWidth;
+        int color;
+        float density;
+
+        void set(int radius, int shadowWidth, int color, float density) {
+            this.radius = radius;
+            this.shadowWidth = shadowWidth;
+            this.color = color;
+            this.density = density;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return radius == other.radius && shadowWidth == other.shadowWidth
+                    && color == other.color && density == other.density;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = radius;
+            result = 31 * result + shadowWidth;
+            result = 31 * result + color;
+            result = 31 * result + Float.floatToIntBits(density);
+            return result;
+        }
+    }
+}
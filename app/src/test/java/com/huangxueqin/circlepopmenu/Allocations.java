@@ -0,0 +1,40 @@
+package com.huangxueqin.circlepopmenu;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes the current thread allocates, using the HotSpot thread bean.
+ */
+final class Allocations {
+    private static final int WARM_UP_RUNS = 10;
+
+    private Allocations() {
+    }
+
+    static boolean isSupported() {
+        return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean;
+    }
+
+    /**
+     * Returns the bytes allocated by one run of the task, averaged over {@code runs} runs
+     * after a warm up. Lazily created caches and one off allocations of the first runs
+     * therefore do not count.
+     */
+    static long bytesPerRun(Runnable task, int runs) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            task.run();
+        }
+        // the probe itself may allocate, it is measured once and subtracted
+        long probeStart = bean.getThreadAllocatedBytes(thread);
+        long probe = bean.getThreadAllocatedBytes(thread) - probeStart;
+
+        long start = bean.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        long bytes = bean.getThreadAllocatedBytes(thread) - start - probe;
+        return Math.max(0, bytes) / runs;
+    }
+}
@@ -0,0 +1,195 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Draw budgets of a single circle button: shadow, circle and icon, no clips, and no
+ * allocations or resource lookups once the first frame is drawn.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class CircleButtonBudgetTest {
+    static final int MAX_BUTTON_DRAWS = 3;
+    static final int MAX_BUTTON_SAVES = 1;
+
+    private static final int SIZE = 150;
+    private static final int FRAMES = 100;
+
+    private CountingContext mContext;
+    private CircleButton mButton;
+    private RecordingCanvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mContext = new CountingContext(RuntimeEnvironment.application);
+        mButton = new CircleButton(mContext);
+        mButton.measure(exactly(SIZE), exactly(SIZE));
+        mButton.layout(0, 0, SIZE, SIZE);
+        mCanvas = new RecordingCanvas(SIZE, SIZE);
+    }
+
+    @Test
+    public void plusIconStaysWithinDrawBudget() {
+        mButton.setIconType(CircleButton.IconType.PLUS);
+        for (int i = 0; i <= FRAMES; i++) {
+            mButton.setIconProgress((float) i / FRAMES);
+            assertFrameWithinBudget(0);
+        }
+    }
+
+    @Test
+    public void imageIconStaysWithinDrawBudget() {
+        mButton.setIconDrawable(new ColorDrawable(Color.RED));
+        for (int i = 0; i <= FRAMES; i++) {
+            mButton.setIconProgress((float) i / FRAMES);
+            assertFrameWithinBudget(MAX_BUTTON_SAVES);
+        }
+    }
+
+    @Test
+    public void customIconIsSizedOnce() {
+        CountingIcon icon = new CountingIcon();
+        mButton.setIconRenderer(icon);
+        for (int i = 0; i <= FRAMES; i++) {
+            mButton.setIconProgress((float) i / FRAMES);
+            assertFrameWithinBudget(0);
+        }
+        assertEquals(1, icon.sizeChanges);
+        assertEquals(FRAMES + 1, icon.draws);
+        assertEquals(1f, icon.lastProgress, 0f);
+    }
+
+    @Test
+    public void framesDoNotReadResources() {
+        mButton.setIconType(CircleButton.IconType.PLUS);
+        mButton.onDraw(mCanvas);
+        mContext.resourceLookups = 0;
+        for (int i = 0; i <= FRAMES; i++) {
+            mButton.setIconProgress((float) i / FRAMES);
+            mButton.onDraw(mCanvas);
+        }
+        assertEquals(0, mContext.resourceLookups);
+    }
+
+    @Test
+    public void plusMorphDoesNotAllocate() {
+        assumeTrue(Allocations.isSupported());
+        final CircleRenderer renderer = sizedRenderer();
+        renderer.setIconType(CircleButton.IconType.PLUS);
+        assertEquals(0, Allocations.bytesPerRun(new MorphFrame(renderer, mCanvas), FRAMES));
+    }
+
+    @Test
+    public void imageRotationDoesNotAllocate() {
+        assumeTrue(Allocations.isSupported());
+        final CircleRenderer renderer = sizedRenderer();
+        renderer.setIconDrawable(new ColorDrawable(Color.RED));
+        assertEquals(0, Allocations.bytesPerRun(new MorphFrame(renderer, mCanvas), FRAMES));
+    }
+
+    @Test
+    public void buttonFrameDoesNotAllocate() {
+        assumeTrue(Allocations.isSupported());
+        mButton.setIconType(CircleButton.IconType.PLUS);
+        mButton.setIconProgress(0.5f);
+        assertEquals(0, Allocations.bytesPerRun(new Runnable() {
+            @Override
+            public void run() {
+                mButton.onDraw(mCanvas);
+            }
+        }, FRAMES));
+    }
+
+    private CircleRenderer sizedRenderer() {
+        CircleRenderer renderer = new CircleRenderer(mContext.getResources(),
+                CircleRenderer.getDefaultCircleDrawable(mContext));
+        renderer.setSize(SIZE, SIZE, SIZE / 2 - CircleRenderer.SHADOW_WIDTH_PX);
+        return renderer;
+    }
+
+    private void assertFrameWithinBudget(int maxSaves) {
+        mCanvas.reset();
+        mButton.onDraw(mCanvas);
+        assertTrue("draws " + mCanvas.drawCount, mCanvas.drawCount > 0 && mCanvas.drawCount <= MAX_BUTTON_DRAWS);
+        assertTrue("saves " + mCanvas.saveCount, mCanvas.saveCount <= maxSaves);
+        assertEquals(0, mCanvas.clipCount);
+        assertEquals(1, mCanvas.getSaveDepth());
+    }
+
+    static int exactly(int size) {
+        return View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.EXACTLY);
+    }
+
+    /**
+     * One animation frame, the progress moves on with every run.
+     */
+    private static final class MorphFrame implements Runnable {
+        private final CircleRenderer mRenderer;
+        private final Canvas mCanvas;
+        private int mFrame;
+
+        MorphFrame(CircleRenderer renderer, Canvas canvas) {
+            mRenderer = renderer;
+            mCanvas = canvas;
+        }
+
+        @Override
+        public void run() {
+            mRenderer.setIconProgress((float) (mFrame++ % FRAMES) / FRAMES);
+            mRenderer.draw(mCanvas);
+        }
+    }
+
+    private static final class CountingIcon extends IconRenderer {
+        int sizeChanges;
+        int draws;
+        float lastProgress;
+
+        @Override
+        protected void onSizeChanged(float cx, float cy, int radius, float density) {
+            sizeChanges++;
+        }
+
+        @Override
+        protected void draw(Canvas canvas, float progress) {
+            draws++;
+            lastProgress = progress;
+            canvas.drawCircle(0, 0, 1, null);
+        }
+    }
+
+    /**
+     * Counts resource lookups through the context, like the density read per frame this
+     * budget is meant to catch.
+     */
+    static final class CountingContext extends ContextWrapper {
+        int resourceLookups;
+
+        CountingContext(Context base) {
+            super(base);
+        }
+
+        @Override
+        public Resources getResources() {
+            resourceLookups++;
+            return super.getResources();
+        }
+    }
+}
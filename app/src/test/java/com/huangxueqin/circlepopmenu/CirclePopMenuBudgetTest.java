@@ -0,0 +1,158 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static com.huangxueqin.circlepopmenu.CircleButtonBudgetTest.MAX_BUTTON_DRAWS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measure and draw budgets of a menu through a full expand and collapse. Frames are stepped
+ * with {@link CirclePopMenu#setExpandProgress(float)}, the update the animator runs per frame.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class CirclePopMenuBudgetTest {
+    private static final int ITEM_COUNT = 5;
+    private static final int FRAMES = 60;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    // label background and one line of text
+    private static final int MAX_LABEL_DRAWS = 2;
+    // the view's own save, a layer for its alpha and one inside onDraw
+    private static final int MAX_SAVES_PER_VIEW = 3;
+    // its bounds in the parent and the padding of a view group
+    private static final int MAX_CLIPS_PER_VIEW = 2;
+
+    private CirclePopMenu mMenu;
+    private MenuMetrics mMetrics;
+
+    @Before
+    public void setUp() {
+        mMenu = new CirclePopMenu(RuntimeEnvironment.application);
+        mMenu.setAdapter(new CirclePopMenu.Adapter() {
+            @Override
+            public int getCount() {
+                return ITEM_COUNT;
+            }
+
+            @Override
+            public void onBindMenuItem(CirclePopMenuItem item, int position) {
+                item.setLabel("menu " + position);
+            }
+        });
+        mMenu.setOnMetricsListener(new CirclePopMenu.OnMetricsListener() {
+            @Override
+            public void onMenuAnimationMetrics(CirclePopMenu menu, MenuMetrics metrics) {
+            }
+        });
+        mMetrics = mMenu.getMetrics();
+        assertNotNull(mMetrics);
+        layoutPass();
+    }
+
+    @Test
+    public void collapsedMenuMeasuresNoItems() {
+        assertEquals(1, mMenu.getChildCount());
+        assertEquals(1, mMetrics.getPassCount(MenuMetrics.VIEW_MENU, MenuMetrics.PASS_MEASURE));
+        assertEquals(0, mMetrics.getPassCount(MenuMetrics.VIEW_ITEM, MenuMetrics.PASS_MEASURE));
+    }
+
+    @Test
+    public void expandCollapseCycleMeasuresEveryItemOnce() {
+        mMetrics.reset();
+        stepProgress(0f, 1f);
+        assertTrue(mMenu.isExpanded());
+        assertEquals(ITEM_COUNT + 1, mMenu.getChildCount());
+        // frames only move items, they never measure the menu again
+        assertEquals(0, mMetrics.getPassCount(MenuMetrics.VIEW_MENU, MenuMetrics.PASS_MEASURE));
+        assertTrue(mMetrics.getPassCount(MenuMetrics.VIEW_ITEM, MenuMetrics.PASS_MEASURE) <= ITEM_COUNT);
+
+        mMetrics.reset();
+        stepProgress(1f, 0f);
+        assertFalse(mMenu.isExpanded());
+        assertEquals(1, mMenu.getChildCount());
+        assertEquals(0, mMetrics.getPassCount(MenuMetrics.VIEW_MENU, MenuMetrics.PASS_MEASURE));
+        assertEquals(0, mMetrics.getPassCount(MenuMetrics.VIEW_ITEM, MenuMetrics.PASS_MEASURE));
+    }
+
+    @Test
+    public void layoutPassMeasuresEveryItemAtMostOnce() {
+        mMenu.setExpandProgress(1f);
+        for (int pass = 0; pass < 3; pass++) {
+            mMetrics.reset();
+            layoutPass();
+            assertEquals(1, mMetrics.getPassCount(MenuMetrics.VIEW_MENU, MenuMetrics.PASS_MEASURE));
+            assertTrue(mMetrics.getPassCount(MenuMetrics.VIEW_ITEM, MenuMetrics.PASS_MEASURE) <= ITEM_COUNT);
+        }
+    }
+
+    @Test
+    public void expandedFrameStaysWithinDrawBudget() {
+        assertFramesWithinDrawBudget();
+    }
+
+    @Test
+    public void flatExpandedFrameStaysWithinDrawBudget() {
+        mMenu.setFlatMenuItems(true);
+        assertFramesWithinDrawBudget();
+    }
+
+    @Test
+    public void flatItemFrameDoesNotAllocate() {
+        assumeTrue(Allocations.isSupported());
+        final CirclePopMenuItem item = new CirclePopMenuItem(RuntimeEnvironment.application, "menu", null, true);
+        item.measure(atMost(WIDTH), atMost(HEIGHT));
+        item.layout(0, 0, item.getMeasuredWidth(), item.getMeasuredHeight());
+        final RecordingCanvas canvas = new RecordingCanvas(WIDTH, HEIGHT);
+        assertEquals(0, Allocations.bytesPerRun(new Runnable() {
+            @Override
+            public void run() {
+                item.onDraw(canvas);
+            }
+        }, FRAMES));
+    }
+
+    private void assertFramesWithinDrawBudget() {
+        mMenu.setExpandProgress(0.01f);
+        layoutPass();
+        RecordingCanvas canvas = new RecordingCanvas(WIDTH, HEIGHT);
+        for (int i = 1; i <= FRAMES; i++) {
+            mMenu.setExpandProgress((float) i / FRAMES);
+            canvas.reset();
+            mMenu.dispatchDraw(canvas);
+
+            final int views = 1 + 3 * ITEM_COUNT;
+            final int maxDraws = (1 + ITEM_COUNT) * MAX_BUTTON_DRAWS + ITEM_COUNT * MAX_LABEL_DRAWS;
+            assertTrue("draws " + canvas.drawCount, canvas.drawCount <= maxDraws);
+            assertTrue("saves " + canvas.saveCount, canvas.saveCount <= views * MAX_SAVES_PER_VIEW);
+            assertTrue("clips " + canvas.clipCount, canvas.clipCount <= views * MAX_CLIPS_PER_VIEW);
+            assertEquals(1, canvas.getSaveDepth());
+        }
+    }
+
+    private void stepProgress(float from, float to) {
+        for (int i = 0; i <= FRAMES; i++) {
+            mMenu.setExpandProgress(from + (to - from) * i / FRAMES);
+        }
+    }
+
+    private void layoutPass() {
+        mMenu.measure(atMost(WIDTH), atMost(HEIGHT));
+        mMenu.layout(0, 0, mMenu.getMeasuredWidth(), mMenu.getMeasuredHeight());
+    }
+
+    private static int atMost(int size) {
+        return View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.AT_MOST);
+    }
+}
@@ -0,0 +1,157 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Updates between {@link CirclePopMenu#beginUpdate()} and {@link CirclePopMenu#commit()}
+ * reuse the items of unchanged ids and cost a single layout pass.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class CirclePopMenuUpdateTest {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private final List<String> mLabels = new ArrayList<>(Arrays.asList("a", "b", "c", "d"));
+    private boolean mConstantIds;
+    private CirclePopMenu mMenu;
+    private MenuMetrics mMetrics;
+
+    @Before
+    public void setUp() {
+        mMenu = new CirclePopMenu(RuntimeEnvironment.application);
+        mMenu.setAdapter(new CirclePopMenu.Adapter() {
+            @Override
+            public int getCount() {
+                return mLabels.size();
+            }
+
+            @Override
+            public long getItemId(int position) {
+                return mConstantIds ? 0 : mLabels.get(position).hashCode();
+            }
+
+            @Override
+            public void onBindMenuItem(CirclePopMenuItem item, int position) {
+                item.setLabel(mLabels.get(position));
+            }
+        });
+        mMenu.setOnMetricsListener(new CirclePopMenu.OnMetricsListener() {
+            @Override
+            public void onMenuAnimationMetrics(CirclePopMenu menu, MenuMetrics metrics) {
+            }
+        });
+        mMetrics = mMenu.getMetrics();
+        layoutPass();
+        mMenu.setExpandProgress(1f);
+        layoutPass();
+    }
+
+    @Test
+    public void keptItemsAreReused() {
+        Map<String, CirclePopMenuItem> before = itemsByLabel();
+        assertEquals(mLabels.size(), before.size());
+
+        mMenu.beginUpdate();
+        mLabels.remove("b");
+        mLabels.add(1, "e");
+        mMenu.commit();
+        layoutPass();
+        // finishes the change animation, the removed item goes back to the pool
+        mMenu.setExpandProgress(1f);
+
+        Map<String, CirclePopMenuItem> after = itemsByLabel();
+        assertEquals(mLabels.size(), after.size());
+        assertFalse(after.containsKey("b"));
+        assertNotNull(after.get("e"));
+        for (String label : new String[] {"a", "c", "d"}) {
+            assertSame(before.get(label), after.get(label));
+        }
+        assertEquals(1, after.get("e").getPosition());
+        assertEquals(2, after.get("c").getPosition());
+    }
+
+    @Test
+    public void updateIsLaidOutOnce() {
+        mMetrics.reset();
+        mMenu.beginUpdate();
+        for (CirclePopMenuItem item : itemsByLabel().values()) {
+            item.setMenuButtonSize(120);
+            item.setMenuLabelTextSize(30);
+            item.setMenuLabelPosition(CirclePopMenu.MenuLabelPosition.LEFT);
+        }
+        mLabels.add("f");
+        assertFalse(mMenu.isLayoutRequested());
+        mMenu.commit();
+        assertTrue(mMenu.isLayoutRequested());
+
+        layoutPass();
+        assertEquals(1, mMetrics.getPassCount(MenuMetrics.VIEW_MENU, MenuMetrics.PASS_MEASURE));
+        assertTrue(mMetrics.getPassCount(MenuMetrics.VIEW_ITEM, MenuMetrics.PASS_MEASURE) <= mLabels.size());
+        assertEquals(mLabels.size(), itemsByLabel().size());
+    }
+
+    @Test
+    public void duplicateIdsLeaveNoStrayItems() {
+        mConstantIds = true;
+        mMenu.beginUpdate();
+        mMenu.commit();
+        layoutPass();
+        mMenu.beginUpdate();
+        mLabels.remove("d");
+        mMenu.commit();
+        layoutPass();
+        mMenu.setExpandProgress(1f);
+
+        assertEquals(mLabels.size() + 1, mMenu.getChildCount());
+        Map<String, CirclePopMenuItem> items = itemsByLabel();
+        for (int i = 0; i < mLabels.size(); i++) {
+            assertEquals(i, items.get(mLabels.get(i)).getPosition());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void commitNeedsBeginUpdate() {
+        mMenu.commit();
+    }
+
+    private Map<String, CirclePopMenuItem> itemsByLabel() {
+        Map<String, CirclePopMenuItem> items = new HashMap<>();
+        for (int i = 0; i < mMenu.getChildCount(); i++) {
+            View child = mMenu.getChildAt(i);
+            if (child instanceof CirclePopMenuItem) {
+                CirclePopMenuItem item = (CirclePopMenuItem) child;
+                items.put(item.getLabel().toString(), item);
+            }
+        }
+        return items;
+    }
+
+    private void layoutPass() {
+        mMenu.measure(atMost(WIDTH), atMost(HEIGHT));
+        mMenu.layout(0, 0, mMenu.getMeasuredWidth(), mMenu.getMeasuredHeight());
+    }
+
+    private static int atMost(int size) {
+        return View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.AT_MOST);
+    }
+}
@@ -0,0 +1,76 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Menu resources are parsed once and shared by every menu showing them.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class MenuResourceTest {
+
+    @Test
+    public void parsesItems() {
+        MenuResource menu = MenuResource.get(RuntimeEnvironment.application, R.menu.sample_circle_pop_menu);
+        assertEquals(3, menu.size());
+        assertEquals(R.id.menu_copy, menu.getItemId(0));
+        assertEquals("Search", menu.getTitle(1).toString());
+        assertEquals(CirclePopMenu.MenuLabelPosition.RIGHT, menu.getLabelPosition());
+        assertNotNull(menu.newIcon(RuntimeEnvironment.application, 2));
+    }
+
+    @Test
+    public void labelPositionsMapByAttributeValue() {
+        assertEquals(CirclePopMenu.MenuLabelPosition.LEFT, CirclePopMenu.MenuLabelPosition.fromId(0));
+        assertEquals(CirclePopMenu.MenuLabelPosition.RIGHT, CirclePopMenu.MenuLabelPosition.fromId(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownLabelPositionIsRejected() {
+        CirclePopMenu.MenuLabelPosition.fromId(2);
+    }
+
+    @Test
+    public void menusShareOneParse() {
+        Context context = RuntimeEnvironment.application;
+        CirclePopMenu first = new CirclePopMenu(context);
+        CirclePopMenu second = new CirclePopMenu(context);
+        first.setMenuResource(R.menu.sample_circle_pop_menu);
+        second.setMenuResource(R.menu.sample_circle_pop_menu);
+        assertNotSame(first.getAdapter(), second.getAdapter());
+        assertSame(MenuResource.get(context, R.menu.sample_circle_pop_menu),
+                MenuResource.get(context, R.menu.sample_circle_pop_menu));
+        assertEquals(R.id.menu_search_all, second.getAdapter().getItemId(2));
+    }
+
+    @Test
+    public void rotatingBackReusesTheParse() {
+        Resources res = RuntimeEnvironment.application.getResources();
+        Configuration portrait = new Configuration(res.getConfiguration());
+        portrait.orientation = Configuration.ORIENTATION_PORTRAIT;
+        Configuration landscape = new Configuration(portrait);
+        landscape.orientation = Configuration.ORIENTATION_LANDSCAPE;
+
+        res.updateConfiguration(portrait, res.getDisplayMetrics());
+        MenuResource first = MenuResource.get(RuntimeEnvironment.application, R.menu.sample_circle_pop_menu);
+        res.updateConfiguration(landscape, res.getDisplayMetrics());
+        MenuResource rotated = MenuResource.get(RuntimeEnvironment.application, R.menu.sample_circle_pop_menu);
+        res.updateConfiguration(portrait, res.getDisplayMetrics());
+
+        assertNotSame(first, rotated);
+        assertSame(first, MenuResource.get(RuntimeEnvironment.application, R.menu.sample_circle_pop_menu));
+    }
+}
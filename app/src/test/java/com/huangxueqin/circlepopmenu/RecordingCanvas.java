@@ -0,0 +1,308 @@
+package com.huangxueqin.circlepopmenu;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Region;
+
+/**
+ * Canvas that only counts what is drawn on it. Draw calls, saves and clips are counted,
+ * transformations are ignored. Counting does not allocate, so allocation budgets measure
+ * only the code under test.
+ */
+class RecordingCanvas extends Canvas {
+    private final int mWidth;
+    private final int mHeight;
+
+    int drawCount;
+    int saveCount;
+    int clipCount;
+    private int mSaveDepth = 1;
+
+    RecordingCanvas(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    void reset() {
+        drawCount = 0;
+        saveCount = 0;
+        clipCount = 0;
+    }
+
+    int getSaveDepth() {
+        return mSaveDepth;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public boolean isHardwareAccelerated() {
+        return false;
+    }
+
+    @Override
+    public boolean getClipBounds(Rect bounds) {
+        bounds.set(0, 0, mWidth, mHeight);
+        return true;
+    }
+
+    // save and restore
+
+    @Override
+    public int save() {
+        return onSave();
+    }
+
+    @Override
+    public int save(int saveFlags) {
+        return onSave();
+    }
+
+    @Override
+    public int saveLayer(RectF bounds, Paint paint, int saveFlags) {
+        return onSave();
+    }
+
+    @Override
+    public int saveLayer(float left, float top, float right, float bottom, Paint paint, int saveFlags) {
+        return onSave();
+    }
+
+    @Override
+    public int saveLayerAlpha(RectF bounds, int alpha, int saveFlags) {
+        return onSave();
+    }
+
+    @Override
+    public int saveLayerAlpha(float left, float top, float right, float bottom, int alpha, int saveFlags) {
+        return onSave();
+    }
+
+    private int onSave() {
+        saveCount++;
+        return mSaveDepth++;
+    }
+
+    @Override
+    public void restore() {
+        if (mSaveDepth <= 1) {
+            throw new IllegalStateException("restore without save");
+        }
+        mSaveDepth--;
+    }
+
+    @Override
+    public int getSaveCount() {
+        return mSaveDepth;
+    }
+
+    @Override
+    public void restoreToCount(int saveCount) {
+        if (saveCount < 1 || saveCount > mSaveDepth) {
+            throw new IllegalStateException("restore to " + saveCount + " at depth " + mSaveDepth);
+        }
+        mSaveDepth = saveCount;
+    }
+
+    // transformations
+
+    @Override
+    public void translate(float dx, float dy) {
+    }
+
+    @Override
+    public void scale(float sx, float sy) {
+    }
+
+    @Override
+    public void rotate(float degrees) {
+    }
+
+    @Override
+    public void concat(Matrix matrix) {
+    }
+
+    // clips
+
+    @Override
+    public boolean clipRect(RectF rect) {
+        return onClip();
+    }
+
+    @Override
+    public boolean clipRect(Rect rect) {
+        return onClip();
+    }
+
+    @Override
+    public boolean clipRect(RectF rect, Region.Op op) {
+        return onClip();
+    }
+
+    @Override
+    public boolean clipRect(Rect rect, Region.Op op) {
+        return onClip();
+    }
+
+    @Override
+    public boolean clipRect(float left, float top, float right, float bottom) {
+        return onClip();
+    }
+
+    @Override
+    public boolean clipRect(float left, float top, float right, float bottom, Region.Op op) {
+        return onClip();
+    }
+
+    @Override
+    public boolean clipRect(int left, int top, int right, int bottom) {
+        return onClip();
+    }
+
+    @Override
+    public boolean clipPath(Path path) {
+        return onClip();
+    }
+
+    @Override
+    public boolean clipPath(Path path, Region.Op op) {
+        return onClip();
+    }
+
+    private boolean onClip() {
+        clipCount++;
+        return true;
+    }
+
+    // draws
+
+    @Override
+    public void drawColor(int color) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawPaint(Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Matrix matrix, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawLines(float[] pts, int offset, int count, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawLines(float[] pts, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawRect(RectF rect, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawRect(Rect r, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawOval(RectF oval, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawPath(Path path, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawText(String text, int start, int end, float x, float y, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawText(CharSequence text, int start, int end, float x, float y, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawTextRun(char[] text, int index, int count, int contextIndex, int contextCount,
+            float x, float y, boolean isRtl, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawTextRun(CharSequence text, int start, int end, int contextStart, int contextEnd,
+            float x, float y, boolean isRtl, Paint paint) {
+        drawCount++;
+    }
+}
@@ -0,0 +1,135 @@
+package com.huangxueqin.circlepopmenu.geometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of the menu geometry, run with {@code ./gradlew :geometry:jmh}.
+ * The gc profiler reports the allocation rate, which should stay at zero for
+ * everything but the first targets computation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MenuGeometryBenchmark {
+    // xxhdpi sizes of the default menu
+    private static final int MAIN_BUTTON_SIZE = 150;
+    private static final int MENU_BUTTON_SIZE = 120;
+    private static final int MENU_BUTTON_SPACING = 30;
+    private static final int PADDING = 24;
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+    // frames of a 300ms animation at 60fps
+    private static final int FRAMES = 18;
+
+    @Param({"1", "10", "50", "100", "500"})
+    public int itemCount;
+
+    // an unbounded menu materializes every item, a screen high one only the visible ones
+    @Param({"true", "false"})
+    public boolean bounded;
+
+    @Param({"false", "true"})
+    public boolean radial;
+
+    private MenuGeometry mGeometry;
+    private int[] mItemHeights;
+    private int mWidthSpec;
+    private int mHeightSpec;
+    private int mFirstPosition;
+    private int mVisibleCount;
+
+    @Setup
+    public void setup() {
+        mGeometry = new MenuGeometry();
+        mGeometry.setButtonSizes(MAIN_BUTTON_SIZE, MENU_BUTTON_SIZE, MENU_BUTTON_SPACING);
+        mGeometry.setPadding(PADDING, PADDING, PADDING, PADDING);
+        if (radial) {
+            mGeometry.setRadial(90f, -90f, MAIN_BUTTON_SIZE + MENU_BUTTON_SPACING);
+        }
+        mWidthSpec = MenuGeometry.makeMeasureSpec(SCREEN_WIDTH, MenuGeometry.AT_MOST);
+        mHeightSpec = bounded ? MenuGeometry.makeMeasureSpec(SCREEN_HEIGHT, MenuGeometry.AT_MOST)
+                : MenuGeometry.makeMeasureSpec(0, MenuGeometry.UNSPECIFIED);
+        mItemHeights = new int[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            mItemHeights[i] = MENU_BUTTON_SIZE;
+        }
+
+        mGeometry.measureHeight(itemCount, mHeightSpec);
+        mGeometry.measureWidth(SCREEN_WIDTH / 2);
+        mFirstPosition = mGeometry.getFirstVisiblePosition(0);
+        mVisibleCount = mGeometry.getLastVisiblePosition(itemCount, 0) - mFirstPosition + 1;
+        mGeometry.computeTargets(mFirstPosition, mVisibleCount, mItemHeights, 0);
+    }
+
+    /**
+     * A full measure and layout pass of the menu with all its visible items.
+     */
+    @Benchmark
+    public void measureAndLayout(Blackhole bh) {
+        long button = MenuGeometry.measureCircle(mWidthSpec, mHeightSpec);
+        bh.consume(button);
+        int height = mGeometry.measureHeight(itemCount, mHeightSpec);
+        int first = mGeometry.getFirstVisiblePosition(0);
+        int last = mGeometry.getLastVisiblePosition(itemCount, 0);
+        int width = mGeometry.measureWidth(SCREEN_WIDTH / 2);
+        mGeometry.setSize(width, height);
+        bh.consume(mGeometry.getMainButtonLeft());
+        bh.consume(mGeometry.getMainButtonTop());
+        for (int i = first; i <= last; i++) {
+            bh.consume(mGeometry.getItemLeft(SCREEN_WIDTH / 2, 0, 0));
+            bh.consume(mGeometry.getItemTop(mItemHeights[i]));
+        }
+        mGeometry.computeTargets(first, last - first + 1, mItemHeights, 0);
+    }
+
+    /**
+     * Every item's slot, regardless of visibility, as a scroll through the whole menu needs them.
+     */
+    @Benchmark
+    public void slotPositions(Blackhole bh) {
+        for (int i = 0; i < itemCount; i++) {
+            if (radial) {
+                bh.consume(mGeometry.getSlotDx(i));
+                bh.consume(mGeometry.getSlotDy(i));
+            } else {
+                bh.consume(mGeometry.getSlotTop(i, 0));
+            }
+        }
+    }
+
+    /**
+     * Building the arc tables, paid once per configuration and item count.
+     */
+    @Benchmark
+    public void radialSlotTables(Blackhole bh) {
+        mGeometry.setRadial(90f, -90f, MAIN_BUTTON_SIZE + MENU_BUTTON_SPACING + 1);
+        bh.consume(mGeometry.measureHeight(itemCount, mHeightSpec));
+        mGeometry.setRadial(90f, -90f, MAIN_BUTTON_SIZE + MENU_BUTTON_SPACING);
+        bh.consume(mGeometry.measureHeight(itemCount, mHeightSpec));
+    }
+
+    /**
+     * The per item transforms of all frames of one expand animation.
+     */
+    @Benchmark
+    public void expandAnimationFrames(Blackhole bh) {
+        for (int frame = 1; frame <= FRAMES; frame++) {
+            mGeometry.computeFrame((float) frame / FRAMES);
+            for (int i = 0; i < mVisibleCount; i++) {
+                bh.consume(mGeometry.getFrameTranslationX(i));
+                bh.consume(mGeometry.getFrameTranslationY(i));
+                bh.consume(mGeometry.getFrameAlpha(i));
+            }
+        }
+    }
+}
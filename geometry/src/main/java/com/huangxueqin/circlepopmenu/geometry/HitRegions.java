@@ -0,0 +1,139 @@
+package com.huangxueqin.circlepopmenu.geometry;
+
+import java.util.Arrays;
+
+/**
+ * Touch targets of the menu items as circles and rounded rectangles, kept in primitive
+ * arrays sorted by their top edge. A hit test binary searches the regions which may
+ * reach the touched row and tests their exact shape, the views are never walked.
+ *
+ * <p>Every region belongs to an owner, the index of the item it was added for. Regions
+ * added later lie on top of earlier ones. Nothing allocates once the arrays have grown
+ * to the region count.</p>
+ */
+public final class HitRegions {
+    public static final int NO_HIT = -1;
+
+    private int mCount;
+    private int[] mOwners = new int[0];
+    private float[] mLefts = new float[0];
+    private float[] mTops = new float[0];
+    private float[] mRights = new float[0];
+    private float[] mBottoms = new float[0];
+    private float[] mCornerRadii = new float[0];
+    private float mMaxHeight;
+
+    // region indices ordered by top, packed with the top into sortable longs
+    private long[] mOrder = new long[0];
+    private float[] mSortedTops = new float[0];
+    private boolean mSorted = true;
+
+    public void clear() {
+        mCount = 0;
+        mMaxHeight = 0;
+        mSorted = true;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public void addCircle(int owner, float cx, float cy, float radius) {
+        addRoundRect(owner, cx - radius, cy - radius, cx + radius, cy + radius, radius);
+    }
+
+    public void addRoundRect(int owner, float left, float top, float right, float bottom, float cornerRadius) {
+        ensureCapacity(mCount + 1);
+        final int i = mCount++;
+        mOwners[i] = owner;
+        mLefts[i] = left;
+        mTops[i] = top;
+        mRights[i] = right;
+        mBottoms[i] = bottom;
+        mCornerRadii[i] = Math.min(cornerRadius, Math.min(right - left, bottom - top) / 2);
+        mMaxHeight = Math.max(mMaxHeight, bottom - top);
+        mSorted = false;
+    }
+
+    /**
+     * Returns the owner of the topmost region containing the point, or {@link #NO_HIT}.
+     */
+    public int hitTest(float x, float y) {
+        if (!mSorted) {
+            sort();
+        }
+        // regions starting higher than the tallest one can not reach y
+        int k = lowerBound(y - mMaxHeight);
+        int hit = -1;
+        for (; k < mCount && mSortedTops[k] <= y; k++) {
+            final int i = (int) mOrder[k];
+            if (i > hit && contains(i, x, y)) {
+                hit = i;
+            }
+        }
+        return hit < 0 ? NO_HIT : mOwners[hit];
+    }
+
+    private boolean contains(int i, float x, float y) {
+        final float left = mLefts[i];
+        final float top = mTops[i];
+        final float right = mRights[i];
+        final float bottom = mBottoms[i];
+        if (x < left || x > right || y < top || y > bottom) {
+            return false;
+        }
+        // distance to the nearest point of the rectangle shrunk by the corner radius
+        final float r = mCornerRadii[i];
+        final float dx = x - Math.max(left + r, Math.min(x, right - r));
+        final float dy = y - Math.max(top + r, Math.min(y, bottom - r));
+        return dx * dx + dy * dy <= r * r;
+    }
+
+    private void sort() {
+        for (int i = 0; i < mCount; i++) {
+            mOrder[i] = ((long) sortableBits(mTops[i]) << 32) | i;
+        }
+        Arrays.sort(mOrder, 0, mCount);
+        for (int k = 0; k < mCount; k++) {
+            mSortedTops[k] = mTops[(int) mOrder[k]];
+        }
+        mSorted = true;
+    }
+
+    /**
+     * Float bits whose signed int order is the order of the floats.
+     */
+    private static int sortableBits(float f) {
+        final int bits = Float.floatToIntBits(f);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    private int lowerBound(float top) {
+        int lo = 0;
+        int hi = mCount;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (mSortedTops[mid] < top) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void ensureCapacity(int count) {
+        if (mOwners.length >= count) {
+            return;
+        }
+        final int capacity = Math.max(count, mOwners.length * 2);
+        mOwners = Arrays.copyOf(mOwners, capacity);
+        mLefts = Arrays.copyOf(mLefts, capacity);
+        mTops = Arrays.copyOf(mTops, capacity);
+        mRights = Arrays.copyOf(mRights, capacity);
+        mBottoms = Arrays.copyOf(mBottoms, capacity);
+        mCornerRadii = Arrays.copyOf(mCornerRadii, capacity);
+        mOrder = new long[capacity];
+        mSortedTops = new float[capacity];
+    }
+}
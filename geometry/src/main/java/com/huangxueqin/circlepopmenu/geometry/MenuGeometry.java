@@ -0,0 +1,556 @@
+package com.huangxueqin.circlepopmenu.geometry;
+
+/**
+ * Framework free sizing, positioning and animation math of the circle pop menu.
+ * The views feed it their sizes and copy the results onto themselves, so the hot
+ * paths can be benchmarked on a plain JVM.
+ *
+ * <p>Slot positions count from the main button, position 0 is next to it. Per item
+ * results are indexed by attached item, index 0 being the first attached position.
+ * Nothing allocates once the per item arrays have grown to the item count.</p>
+ *
+ * <p>Items are either stacked above the main button, scrolling when they do not fit,
+ * or spread on arcs around it, see {@link #setRadial}.</p>
+ */
+public final class MenuGeometry {
+    // mirrors android.view.View.MeasureSpec
+    private static final int MODE_SHIFT = 30;
+    private static final int MODE_MASK = 0x3 << MODE_SHIFT;
+    public static final int UNSPECIFIED = 0;
+    public static final int EXACTLY = 1 << MODE_SHIFT;
+    public static final int AT_MOST = 2 << MODE_SHIFT;
+
+    private static final int ANIM_BASE_DURATION = 100;
+    private static final int ANIM_ITEM_STAGGER = 20;
+    // long menus shorten the stagger instead of animating longer
+    private static final int ANIM_MAX_DURATION = 400;
+
+    private int mMainButtonSize;
+    private int mMenuButtonSize;
+    private int mMenuButtonSpacing;
+    private int mPaddingLeft;
+    private int mPaddingTop;
+    private int mPaddingRight;
+    private int mPaddingBottom;
+    private boolean mLabelsLeft;
+
+    // radial mode, angles in degrees counterclockwise from the side facing away from the main button
+    private boolean mRadial;
+    private float mStartAngle;
+    private float mSweepAngle;
+    private int mRadius;
+    // slot centers relative to the main button center, x pointing away from the main button,
+    // computed once per configuration and count so frames and relayouts do no trigonometry
+    private int mSlotCount = -1;
+    private float[] mSlotDx = new float[0];
+    private float[] mSlotDy = new float[0];
+    // how far the main button center is pushed in from the padding by slots behind or below it
+    private int mShiftX;
+    private int mShiftY;
+
+    // part of the item host on screen, items outside of it both collapsed and expanded are not animated
+    private int mVisibleLeft = Integer.MIN_VALUE;
+    private int mVisibleTop = Integer.MIN_VALUE;
+    private int mVisibleRight = Integer.MAX_VALUE;
+    private int mVisibleBottom = Integer.MAX_VALUE;
+
+    // result of the last measure pass
+    private int mWidth;
+    private int mHeight;
+    private int mMaxScrollOffset;
+
+    // animation targets, see computeTargets
+    private int mItemCount;
+    private int mAnimationDuration;
+    private float mExpandDistance;
+    private float[] mCollapsedTranslations = new float[0];
+    private float[] mExpandedTranslationsX = new float[0];
+    private float[] mExpandedTranslations = new float[0];
+    private float[] mAnimEnds = new float[0];
+
+    // transforms of the last frame, see computeFrame
+    private float[] mFrameTranslationsX = new float[0];
+    private float[] mFrameTranslations = new float[0];
+    private float[] mFrameAlphas = new float[0];
+
+    public static int makeMeasureSpec(int size, int mode) {
+        return (size & ~MODE_MASK) | (mode & MODE_MASK);
+    }
+
+    public static int getMode(int measureSpec) {
+        return measureSpec & MODE_MASK;
+    }
+
+    public static int getSize(int measureSpec) {
+        return measureSpec & ~MODE_MASK;
+    }
+
+    /**
+     * Square size of a circle button for the given specs, packed into a long,
+     * see {@link #unpackWidth(long)} and {@link #unpackHeight(long)}.
+     */
+    public static long measureCircle(int widthMeasureSpec, int heightMeasureSpec) {
+        final int widthMode = getMode(widthMeasureSpec);
+        final int heightMode = getMode(heightMeasureSpec);
+
+        int width = Math.max(0, getSize(widthMeasureSpec));
+        int height = Math.max(0, getSize(heightMeasureSpec));
+
+        if (widthMode == EXACTLY) {
+            if (heightMode == AT_MOST) {
+                height = Math.min(width, height);
+            } else if (heightMode == UNSPECIFIED) {
+                height = width;
+            }
+        } else if (heightMode == EXACTLY) {
+            if (widthMode == AT_MOST) {
+                width = Math.min(width, height);
+            } else {
+                width = height;
+            }
+        } else if (widthMode == AT_MOST && heightMode == AT_MOST) {
+            width = Math.min(width, height);
+            height = Math.min(width, height);
+        } else if (widthMode == UNSPECIFIED && heightMode == UNSPECIFIED) {
+            width = Math.max(width, height);
+            height = Math.max(width, height);
+        } else {
+            if (widthMode == UNSPECIFIED) {
+                width = height;
+            } else {
+                height = width;
+            }
+        }
+        return pack(width, height);
+    }
+
+    public static int circleRadius(int width, int height, int horizontalPadding, int shadowWidth) {
+        final int padding = Math.max(shadowWidth * 2, horizontalPadding);
+        return Math.min(width - padding, height - padding) / 2;
+    }
+
+    public static long pack(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+
+    public static int unpackWidth(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    public static int unpackHeight(long packed) {
+        return (int) packed;
+    }
+
+    public void setButtonSizes(int mainButtonSize, int menuButtonSize, int menuButtonSpacing) {
+        if (mainButtonSize != mMainButtonSize || menuButtonSize != mMenuButtonSize
+                || menuButtonSpacing != mMenuButtonSpacing) {
+            mMainButtonSize = mainButtonSize;
+            mMenuButtonSize = menuButtonSize;
+            mMenuButtonSpacing = menuButtonSpacing;
+            mSlotCount = -1;
+        }
+    }
+
+    /**
+     * Spreads the items on an arc of the radius around the main button center. Angles are in
+     * degrees, 0 pointing away from the side the main button sits on and positive angles turning
+     * up, so one configuration fits both label positions. Items not fitting on the arc go to
+     * further rings, one slot stride apart.
+     */
+    public void setRadial(float startAngle, float sweepAngle, int radius) {
+        if (!mRadial || startAngle != mStartAngle || sweepAngle != mSweepAngle || radius != mRadius) {
+            mRadial = true;
+            mStartAngle = startAngle;
+            mSweepAngle = sweepAngle;
+            mRadius = radius;
+            mSlotCount = -1;
+        }
+    }
+
+    /**
+     * Stacks the items above the main button, the default.
+     */
+    public void setLinear() {
+        if (mRadial) {
+            mRadial = false;
+            mShiftX = mShiftY = 0;
+        }
+    }
+
+    public boolean isRadial() {
+        return mRadial;
+    }
+
+    public void setPadding(int left, int top, int right, int bottom) {
+        mPaddingLeft = left;
+        mPaddingTop = top;
+        mPaddingRight = right;
+        mPaddingBottom = bottom;
+    }
+
+    public void setLabelsLeft(boolean labelsLeft) {
+        mLabelsLeft = labelsLeft;
+    }
+
+    public int getMainButtonSize() {
+        return mMainButtonSize;
+    }
+
+    public int getMenuButtonSize() {
+        return mMenuButtonSize;
+    }
+
+    public int getSlotStride() {
+        return mMenuButtonSize + mMenuButtonSpacing;
+    }
+
+    /**
+     * Measures the height of a menu with count items, every slot being one menu button high.
+     * Content higher than the spec allows is scrolled, see {@link #getMaxScrollOffset()}.
+     */
+    public int measureHeight(int count, int heightMeasureSpec) {
+        if (mRadial) {
+            return measureRadialHeight(count, heightMeasureSpec);
+        }
+        final int vertPadding = mPaddingTop + mPaddingBottom;
+        final int contentHeight = vertPadding + mMainButtonSize + count * getSlotStride();
+        int height = contentHeight;
+        if (getMode(heightMeasureSpec) != UNSPECIFIED) {
+            height = Math.min(height, getSize(heightMeasureSpec));
+        }
+        mHeight = height;
+        mMaxScrollOffset = Math.max(0, contentHeight - height);
+        return height;
+    }
+
+    /**
+     * Measures the width of a menu whose widest item is maxItemWidth.
+     */
+    public int measureWidth(int maxItemWidth) {
+        if (mRadial) {
+            return measureRadialWidth(maxItemWidth);
+        }
+        int contentWidth = maxItemWidth;
+        if (mMainButtonSize > mMenuButtonSize) {
+            contentWidth = Math.max(mMainButtonSize, contentWidth + (mMainButtonSize - mMenuButtonSize) / 2);
+        }
+        mWidth = mPaddingLeft + mPaddingRight + contentWidth;
+        return mWidth;
+    }
+
+    /**
+     * Sets the size the menu was actually laid out with.
+     */
+    public void setSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getMaxScrollOffset() {
+        return mMaxScrollOffset;
+    }
+
+    public int clampScrollOffset(int scrollOffset) {
+        return Math.max(0, Math.min(mMaxScrollOffset, scrollOffset));
+    }
+
+    /**
+     * Top of the expanded slot of the position.
+     */
+    public int getSlotTop(int position, int scrollOffset) {
+        final int firstSlotTop = mHeight - mPaddingBottom - mMainButtonSize - mMenuButtonSpacing - mMenuButtonSize;
+        return firstSlotTop - position * getSlotStride() + scrollOffset;
+    }
+
+    /**
+     * First position whose slot is not hidden below the main button.
+     */
+    public int getFirstVisiblePosition(int scrollOffset) {
+        if (mRadial) {
+            return 0;
+        }
+        return scrollOffset < mMenuButtonSize ? 0 : (scrollOffset - mMenuButtonSize) / getSlotStride() + 1;
+    }
+
+    /**
+     * Last position whose slot is not scrolled out at the top, -1 if none is.
+     */
+    public int getLastVisiblePosition(int count, int scrollOffset) {
+        if (mRadial) {
+            return count - 1;
+        }
+        final int visibleExtent = getSlotTop(0, scrollOffset) + mMenuButtonSize - mPaddingTop;
+        return Math.min(count - 1, visibleExtent <= 0 ? -1 : (visibleExtent - 1) / getSlotStride());
+    }
+
+    public int getMainButtonLeft() {
+        return mLabelsLeft ? mWidth - mPaddingRight - mShiftX - mMainButtonSize : mPaddingLeft + mShiftX;
+    }
+
+    public int getMainButtonTop() {
+        return mHeight - mPaddingBottom - mShiftY - mMainButtonSize;
+    }
+
+    /**
+     * Left of an item laid out on the main button, items only move by translation.
+     */
+    public int getItemLeft(int itemWidth, int itemPaddingLeft, int itemPaddingRight) {
+        final int inset = (mMainButtonSize - mMenuButtonSize) / 2;
+        if (mLabelsLeft) {
+            return mWidth - mPaddingRight - mShiftX - inset + itemPaddingRight - itemWidth;
+        }
+        return mPaddingLeft + mShiftX + inset - itemPaddingLeft;
+    }
+
+    public int getItemTop(int itemHeight) {
+        final int bottom = mHeight - mPaddingBottom - mShiftY - (mMainButtonSize - itemHeight) / 2;
+        return bottom - itemHeight;
+    }
+
+    /**
+     * Sets the part of the item host visible on screen, in its coordinates, for the next
+     * {@link #computeTargets}.
+     */
+    public void setVisibleBounds(int left, int top, int right, int bottom) {
+        mVisibleLeft = left;
+        mVisibleTop = top;
+        mVisibleRight = right;
+        mVisibleBottom = bottom;
+    }
+
+    public void clearVisibleBounds() {
+        setVisibleBounds(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Computes collapsed and expanded translations and stagger of count attached items
+     * starting at firstPosition. The item next to the main button finishes first.
+     *
+     * <p>The stagger shrinks so the animation never takes longer than
+     * {@value #ANIM_MAX_DURATION} ms. Items outside the visible bounds both collapsed and
+     * expanded get no stagger slot, they jump to their final state on the first frame.</p>
+     */
+    public void computeTargets(int firstPosition, int count, int[] itemHeights, int scrollOffset) {
+        ensureCapacity(count);
+        if (mRadial) {
+            // the arc or the count may have changed since the last measure, rings never scroll
+            computeSlots(firstPosition + count);
+        }
+        mItemCount = count;
+        mExpandDistance = 0;
+        final float collapsedTop = mHeight - mPaddingBottom - mShiftY - (mMainButtonSize + mMenuButtonSize) / 2;
+        // button centers are tested horizontally, the labels next to them may still show a jump
+        final int mainCenterX = mLabelsLeft
+                ? mWidth - mPaddingRight - mShiftX - mMainButtonSize / 2
+                : mPaddingLeft + mShiftX + mMainButtonSize / 2;
+        int animated = 0;
+        for (int i = 0; i < count; i++) {
+            final int top = getItemTop(itemHeights[i]);
+            mCollapsedTranslations[i] = collapsedTop - top;
+            if (mRadial) {
+                // items are laid out with their button centered on the main button
+                final int position = firstPosition + i;
+                mExpandedTranslationsX[i] = mLabelsLeft ? -mSlotDx[position] : mSlotDx[position];
+                mExpandedTranslations[i] = collapsedTop - top + mSlotDy[position];
+            } else {
+                mExpandedTranslationsX[i] = 0;
+                mExpandedTranslations[i] = getSlotTop(firstPosition + i, scrollOffset) - top;
+            }
+            final float dx = mExpandedTranslationsX[i];
+            final float dy = mExpandedTranslations[i] - mCollapsedTranslations[i];
+            mExpandDistance = Math.max(mExpandDistance, (float) Math.sqrt(dx * dx + dy * dy));
+
+            final int height = itemHeights[i];
+            final boolean culled = !isVisible(mainCenterX, top + mCollapsedTranslations[i], height)
+                    && !isVisible(mainCenterX + dx, top + mExpandedTranslations[i], height);
+            // culled items are marked with 0 and need no slot
+            mAnimEnds[i] = culled ? 0f : ++animated;
+        }
+
+        final float stagger = animated == 0 ? 0f
+                : Math.min(ANIM_ITEM_STAGGER, (float) (ANIM_MAX_DURATION - ANIM_BASE_DURATION) / animated);
+        mAnimationDuration = ANIM_BASE_DURATION + Math.round(animated * stagger);
+        for (int i = 0; i < count; i++) {
+            if (mAnimEnds[i] > 0) {
+                mAnimEnds[i] = (ANIM_BASE_DURATION + mAnimEnds[i] * stagger) / mAnimationDuration;
+            }
+        }
+    }
+
+    private boolean isVisible(float buttonCenterX, float itemTop, int itemHeight) {
+        final float halfButton = mMenuButtonSize / 2f;
+        return itemTop < mVisibleBottom && itemTop + itemHeight > mVisibleTop
+                && buttonCenterX - halfButton < mVisibleRight && buttonCenterX + halfButton > mVisibleLeft;
+    }
+
+    public int getItemCount() {
+        return mItemCount;
+    }
+
+    public int getAnimationDuration() {
+        return mAnimationDuration;
+    }
+
+    /**
+     * Distance the farthest item travels between collapsed and expanded, which is the length
+     * of a drag fully expanding the menu.
+     */
+    public float getExpandDistance() {
+        return mExpandDistance;
+    }
+
+    /**
+     * Computes translation and alpha of every item for the expand progress in [0, 1],
+     * read them with {@link #getFrameTranslationY(int)} and {@link #getFrameAlpha(int)}.
+     */
+    public void computeFrame(float progress) {
+        for (int i = 0; i < mItemCount; i++) {
+            final float end = mAnimEnds[i];
+            final float t;
+            if (progress <= 0f) {
+                t = 0f;
+            } else if (progress >= end) {
+                t = 1f;
+            } else {
+                t = decelerate(progress / end);
+            }
+            final float from = mCollapsedTranslations[i];
+            mFrameTranslationsX[i] = mExpandedTranslationsX[i] * t;
+            mFrameTranslations[i] = from + (mExpandedTranslations[i] - from) * t;
+            mFrameAlphas[i] = t;
+        }
+    }
+
+    /**
+     * Translation of an item once fully expanded, where it takes touches.
+     */
+    public float getExpandedTranslationX(int index) {
+        return mExpandedTranslationsX[index];
+    }
+
+    public float getExpandedTranslationY(int index) {
+        return mExpandedTranslations[index];
+    }
+
+    public float getFrameTranslationX(int index) {
+        return mFrameTranslationsX[index];
+    }
+
+    public float getFrameTranslationY(int index) {
+        return mFrameTranslations[index];
+    }
+
+    public float getFrameAlpha(int index) {
+        return mFrameAlphas[index];
+    }
+
+    public float getSlotDx(int position) {
+        return mSlotDx[position];
+    }
+
+    public float getSlotDy(int position) {
+        return mSlotDy[position];
+    }
+
+    private int measureRadialHeight(int count, int heightMeasureSpec) {
+        computeSlots(count);
+        final int half = mMainButtonSize / 2;
+        float above = half;
+        float below = half;
+        for (int i = 0; i < count; i++) {
+            above = Math.max(above, -mSlotDy[i] + mMenuButtonSize / 2);
+            below = Math.max(below, mSlotDy[i] + mMenuButtonSize / 2);
+        }
+        mShiftY = (int) Math.ceil(below) - half;
+        int height = mPaddingTop + mPaddingBottom + (int) Math.ceil(above) + half + mShiftY;
+        if (getMode(heightMeasureSpec) != UNSPECIFIED) {
+            height = Math.min(height, getSize(heightMeasureSpec));
+        }
+        mHeight = height;
+        // rings replace scrolling
+        mMaxScrollOffset = 0;
+        return height;
+    }
+
+    private int measureRadialWidth(int maxItemWidth) {
+        final int half = mMainButtonSize / 2;
+        // the label side of an item reaches maxItemWidth minus half a button past its slot center
+        final int itemReach = Math.max(mMenuButtonSize / 2, maxItemWidth - mMenuButtonSize / 2);
+        float behind = half;
+        float ahead = half;
+        for (int i = 0; i < mSlotCount; i++) {
+            behind = Math.max(behind, -mSlotDx[i] + mMenuButtonSize / 2);
+            ahead = Math.max(ahead, mSlotDx[i] + itemReach);
+        }
+        mShiftX = (int) Math.ceil(behind) - half;
+        mWidth = mPaddingLeft + mPaddingRight + mShiftX + half + (int) Math.ceil(ahead);
+        return mWidth;
+    }
+
+    /**
+     * Fills the slot tables for count items, ring by ring. A ring holds as many items as fit
+     * on its arc one slot stride apart, the last ring spreads its items over the whole arc.
+     */
+    private void computeSlots(int count) {
+        if (count == mSlotCount) {
+            return;
+        }
+        if (mSlotDx.length < count) {
+            mSlotDx = new float[count];
+            mSlotDy = new float[count];
+        }
+        mSlotCount = count;
+        final int stride = Math.max(1, getSlotStride());
+        final boolean fullCircle = Math.abs(mSweepAngle) >= 360f;
+        final double start = Math.toRadians(mStartAngle);
+        final double sweep = Math.toRadians(fullCircle ? Math.signum(mSweepAngle) * 360f : mSweepAngle);
+        int position = 0;
+        for (int ring = 0; position < count; ring++) {
+            final int radius = mRadius + ring * stride;
+            final int arcLength = (int) (Math.abs(sweep) * radius);
+            int capacity = fullCircle ? arcLength / stride : arcLength / stride + 1;
+            capacity = Math.max(1, capacity);
+            final int n = Math.min(capacity, count - position);
+            for (int j = 0; j < n; j++, position++) {
+                double fraction;
+                if (fullCircle) {
+                    fraction = (double) j / n;
+                } else {
+                    fraction = n == 1 ? 0.5 : (double) j / (n - 1);
+                }
+                final double angle = start + sweep * fraction;
+                mSlotDx[position] = (float) (radius * Math.cos(angle));
+                mSlotDy[position] = (float) (-radius * Math.sin(angle));
+            }
+        }
+    }
+
+    /**
+     * Same curve as android.view.animation.DecelerateInterpolator with factor 1.
+     */
+    static float decelerate(float input) {
+        return 1f - (1f - input) * (1f - input);
+    }
+
+    private void ensureCapacity(int count) {
+        if (mAnimEnds.length >= count) {
+            return;
+        }
+        final int capacity = Math.max(count, mAnimEnds.length * 2);
+        mCollapsedTranslations = new float[capacity];
+        mExpandedTranslationsX = new float[capacity];
+        mExpandedTranslations = new float[capacity];
+        mAnimEnds = new float[capacity];
+        mFrameTranslationsX = new float[capacity];
+        mFrameTranslations = new float[capacity];
+        mFrameAlphas = new float[capacity];
+    }
+}
@@ -0,0 +1,72 @@
+package com.huangxueqin.circlepopmenu.geometry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.huangxueqin.circlepopmenu.geometry.HitRegions.NO_HIT;
+import static org.junit.Assert.assertEquals;
+
+public class HitRegionsTest {
+    private HitRegions mRegions;
+
+    @Before
+    public void setUp() {
+        mRegions = new HitRegions();
+    }
+
+    @Test
+    public void circleCornersMiss() {
+        mRegions.addCircle(0, 20, 20, 20);
+        assertEquals(0, mRegions.hitTest(20, 20));
+        assertEquals(0, mRegions.hitTest(20, 1));
+        assertEquals(NO_HIT, mRegions.hitTest(2, 2));
+        assertEquals(NO_HIT, mRegions.hitTest(38, 38));
+    }
+
+    @Test
+    public void roundRectCornersMiss() {
+        mRegions.addRoundRect(3, 50, 10, 150, 40, 10);
+        assertEquals(3, mRegions.hitTest(51, 25));
+        assertEquals(3, mRegions.hitTest(100, 11));
+        assertEquals(3, mRegions.hitTest(58, 12));
+        assertEquals(NO_HIT, mRegions.hitTest(51, 11));
+        assertEquals(NO_HIT, mRegions.hitTest(149, 39));
+        assertEquals(NO_HIT, mRegions.hitTest(160, 25));
+    }
+
+    @Test
+    public void stackedItemsResolveToTheirOwner() {
+        // a linear menu adds the item next to the main button first, it is the lowest one
+        for (int i = 0; i < 50; i++) {
+            float top = 1000 - i * 50;
+            mRegions.addCircle(i, 20, top + 20, 20);
+            mRegions.addRoundRect(i, 50, top + 5, 150, top + 35, 10);
+        }
+        for (int i = 0; i < 50; i++) {
+            float top = 1000 - i * 50;
+            assertEquals(i, mRegions.hitTest(20, top + 20));
+            assertEquals(i, mRegions.hitTest(100, top + 20));
+            // the spacing between the items
+            assertEquals(NO_HIT, mRegions.hitTest(20, top + 45));
+        }
+        assertEquals(NO_HIT, mRegions.hitTest(20, -1500));
+        assertEquals(NO_HIT, mRegions.hitTest(20, 1100));
+    }
+
+    @Test
+    public void laterRegionsLieOnTop() {
+        mRegions.addCircle(0, 20, 20, 20);
+        mRegions.addCircle(1, 40, 20, 20);
+        assertEquals(1, mRegions.hitTest(30, 20));
+        assertEquals(0, mRegions.hitTest(10, 20));
+    }
+
+    @Test
+    public void clearRemovesAllRegions() {
+        mRegions.addCircle(0, 20, 20, 20);
+        mRegions.clear();
+        assertEquals(NO_HIT, mRegions.hitTest(20, 20));
+        mRegions.addCircle(5, -20, -20, 10);
+        assertEquals(5, mRegions.hitTest(-20, -20));
+    }
+}
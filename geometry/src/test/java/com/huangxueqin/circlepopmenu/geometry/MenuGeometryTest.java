@@ -0,0 +1,162 @@
+package com.huangxueqin.circlepopmenu.geometry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.huangxueqin.circlepopmenu.geometry.MenuGeometry.AT_MOST;
+import static com.huangxueqin.circlepopmenu.geometry.MenuGeometry.EXACTLY;
+import static com.huangxueqin.circlepopmenu.geometry.MenuGeometry.UNSPECIFIED;
+import static com.huangxueqin.circlepopmenu.geometry.MenuGeometry.makeMeasureSpec;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MenuGeometryTest {
+    private MenuGeometry mGeometry;
+
+    @Before
+    public void setUp() {
+        mGeometry = new MenuGeometry();
+        mGeometry.setButtonSizes(50, 40, 10);
+        mGeometry.setPadding(0, 0, 0, 0);
+    }
+
+    @Test
+    public void circleIsSquare() {
+        long size = MenuGeometry.measureCircle(makeMeasureSpec(30, AT_MOST), makeMeasureSpec(80, EXACTLY));
+        assertEquals(30, MenuGeometry.unpackWidth(size));
+        assertEquals(80, MenuGeometry.unpackHeight(size));
+
+        size = MenuGeometry.measureCircle(makeMeasureSpec(0, UNSPECIFIED), makeMeasureSpec(80, EXACTLY));
+        assertEquals(80, MenuGeometry.unpackWidth(size));
+
+        size = MenuGeometry.measureCircle(makeMeasureSpec(60, AT_MOST), makeMeasureSpec(40, AT_MOST));
+        assertEquals(40, MenuGeometry.unpackWidth(size));
+        assertEquals(40, MenuGeometry.unpackHeight(size));
+    }
+
+    @Test
+    public void heightIsCappedAndScrolls() {
+        assertEquals(50 + 3 * 50, mGeometry.measureHeight(3, makeMeasureSpec(0, UNSPECIFIED)));
+        assertEquals(0, mGeometry.getMaxScrollOffset());
+
+        assertEquals(120, mGeometry.measureHeight(3, makeMeasureSpec(120, AT_MOST)));
+        assertEquals(80, mGeometry.getMaxScrollOffset());
+        assertEquals(80, mGeometry.clampScrollOffset(100));
+    }
+
+    @Test
+    public void visiblePositionsFollowScroll() {
+        mGeometry.measureHeight(10, makeMeasureSpec(200, AT_MOST));
+        assertEquals(0, mGeometry.getFirstVisiblePosition(0));
+        assertEquals(2, mGeometry.getLastVisiblePosition(10, 0));
+        assertEquals(100, mGeometry.getSlotTop(0, 0));
+        assertEquals(50, mGeometry.getSlotTop(1, 0));
+
+        assertEquals(1, mGeometry.getFirstVisiblePosition(40));
+        assertEquals(3, mGeometry.getLastVisiblePosition(10, 40));
+    }
+
+    @Test
+    public void frameInterpolatesBetweenTargets() {
+        mGeometry.measureHeight(2, makeMeasureSpec(0, UNSPECIFIED));
+        mGeometry.computeTargets(0, 2, new int[]{40, 40}, 0);
+        assertEquals(140, mGeometry.getAnimationDuration());
+
+        mGeometry.computeFrame(0f);
+        assertEquals(0f, mGeometry.getFrameTranslationY(0), 0f);
+        assertEquals(0f, mGeometry.getFrameAlpha(1), 0f);
+
+        mGeometry.computeFrame(1f);
+        assertEquals(-55f, mGeometry.getFrameTranslationY(0), 0f);
+        assertEquals(-105f, mGeometry.getFrameTranslationY(1), 0f);
+        assertEquals(1f, mGeometry.getFrameAlpha(1), 0f);
+    }
+
+    @Test
+    public void longMenusAnimateInBoundedTime() {
+        final int count = 50;
+        mGeometry.measureHeight(count, makeMeasureSpec(0, UNSPECIFIED));
+        mGeometry.computeTargets(0, count, filled(count, 40), 0);
+        assertEquals(400, mGeometry.getAnimationDuration());
+
+        mGeometry.computeFrame(0.99f);
+        assertEquals(1f, mGeometry.getFrameAlpha(0), 0f);
+        assertTrue(mGeometry.getFrameAlpha(count - 1) < 1f);
+        mGeometry.computeFrame(1f);
+        assertEquals(1f, mGeometry.getFrameAlpha(count - 1), 0f);
+    }
+
+    @Test
+    public void offScreenItemsJumpToTheirTargets() {
+        // only the top of the menu is on screen, the main button and the lower items are not
+        final int count = 10;
+        mGeometry.measureHeight(count, makeMeasureSpec(0, UNSPECIFIED));
+        mGeometry.setVisibleBounds(0, 0, 1000, 150);
+        mGeometry.computeTargets(0, count, filled(count, 40), 0);
+        assertEquals(100 + 3 * 20, mGeometry.getAnimationDuration());
+
+        mGeometry.computeFrame(0.01f);
+        assertEquals(1f, mGeometry.getFrameAlpha(0), 0f);
+        assertTrue(mGeometry.getFrameAlpha(count - 1) < 1f);
+        mGeometry.computeFrame(0f);
+        assertEquals(0f, mGeometry.getFrameAlpha(0), 0f);
+
+        mGeometry.clearVisibleBounds();
+        mGeometry.computeTargets(0, count, filled(count, 40), 0);
+        assertEquals(100 + count * 20, mGeometry.getAnimationDuration());
+    }
+
+    @Test
+    public void radialSlotsFillRings() {
+        // quarter arc of radius 100 holds 157 / 50 + 1 = 4 slots, the rest go to the next ring
+        mGeometry.setRadial(90f, -90f, 100);
+        mGeometry.measureHeight(6, makeMeasureSpec(0, UNSPECIFIED));
+        assertEquals(0f, mGeometry.getSlotDx(0), 1e-3f);
+        assertEquals(-100f, mGeometry.getSlotDy(0), 1e-3f);
+        assertEquals(100f, mGeometry.getSlotDx(3), 1e-3f);
+        assertEquals(0f, mGeometry.getSlotDy(3), 1e-3f);
+        assertEquals(150f, (float) Math.hypot(mGeometry.getSlotDx(4), mGeometry.getSlotDy(4)), 1e-3f);
+        assertEquals(0, mGeometry.getMaxScrollOffset());
+        assertEquals(5, mGeometry.getLastVisiblePosition(6, 0));
+    }
+
+    @Test
+    public void radialTranslationsMirrorWithLabels() {
+        mGeometry.setRadial(90f, -90f, 100);
+        mGeometry.setLabelsLeft(true);
+        mGeometry.measureHeight(4, makeMeasureSpec(0, UNSPECIFIED));
+        mGeometry.measureWidth(40);
+        mGeometry.computeTargets(0, 4, new int[]{40, 40, 40, 40}, 0);
+        mGeometry.computeFrame(1f);
+        assertEquals(-100f, mGeometry.getFrameTranslationX(3), 1e-3f);
+        assertEquals(0f, mGeometry.getFrameTranslationY(3), 1e-3f);
+        assertEquals(-100f, mGeometry.getFrameTranslationY(0), 1e-3f);
+    }
+
+    @Test
+    public void radialTargetsNeedNoMeasure() {
+        mGeometry.measureHeight(4, makeMeasureSpec(0, UNSPECIFIED));
+        mGeometry.measureWidth(40);
+        // switched to radial and grown without a layout pass in between
+        mGeometry.setRadial(90f, -90f, 100);
+        mGeometry.computeTargets(0, 4, filled(4, 40), 0);
+        mGeometry.computeFrame(1f);
+        assertEquals(100f, mGeometry.getFrameTranslationX(3), 1e-3f);
+        mGeometry.computeTargets(0, 6, filled(6, 40), 0);
+        assertEquals(150f, (float) Math.hypot(mGeometry.getSlotDx(4), mGeometry.getSlotDy(4)), 1e-3f);
+
+        // the first expand after changing the arc goes to the new slots
+        mGeometry.setRadial(90f, 90f, 100);
+        mGeometry.computeTargets(0, 4, filled(4, 40), 0);
+        mGeometry.computeFrame(1f);
+        assertEquals(-100f, mGeometry.getFrameTranslationX(3), 1e-3f);
+    }
+
+    private static int[] filled(int count, int value) {
+        int[] values = new int[count];
+        Arrays.fill(values, value);
+        return values;
+    }
+}